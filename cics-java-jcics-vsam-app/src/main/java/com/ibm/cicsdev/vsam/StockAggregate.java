@@ -0,0 +1,199 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam;
+
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+
+/**
+ * Running totals for a set of stock part records, such as the valuation of
+ * the stock held.
+ *
+ * Each record is read through a {@link StockPartView}, and only the
+ * STOCK-QUANTITY and UNIT-PRICE fields are decoded. All totals are held as
+ * primitive longs, with monetary values held as a whole number of cents, so
+ * adding a record does not allocate any objects.
+ *
+ * An instance can be passed directly to any of the browse methods which
+ * accept a consumer. Instances are not thread-safe, but separate instances
+ * can be merged using {@link #combine(StockAggregate)}.
+ */
+public class StockAggregate implements Consumer<StockPartView>
+{
+    /**
+     * Number of records seen.
+     */
+    private long count;
+
+    /**
+     * Sum of STOCK-QUANTITY.
+     */
+    private long totalQuantity;
+
+    /**
+     * Sum of STOCK-QUANTITY multiplied by UNIT-PRICE, in cents.
+     */
+    private long totalValueCents;
+
+    /**
+     * Smallest STOCK-QUANTITY seen.
+     */
+    private int minQuantity = Integer.MAX_VALUE;
+
+    /**
+     * Largest STOCK-QUANTITY seen.
+     */
+    private int maxQuantity = Integer.MIN_VALUE;
+
+    /**
+     * Smallest UNIT-PRICE seen, in cents.
+     */
+    private long minUnitPriceCents = Long.MAX_VALUE;
+
+    /**
+     * Largest UNIT-PRICE seen, in cents.
+     */
+    private long maxUnitPriceCents = Long.MIN_VALUE;
+
+    /**
+     * Adds a single record to the totals.
+     *
+     * @param view the record to add.
+     */
+    @Override
+    public void accept(StockPartView view)
+    {
+        add( view.getByteBuffer() );
+    }
+
+    /**
+     * Adds a single record to the totals.
+     *
+     * @param record the flat byte structure of a StockPart record.
+     */
+    public void add(byte[] record)
+    {
+        // Decode only the two fields we need
+        add( StockPartView.stockQuantityOf(record), StockPartView.unitPriceCentsOf(record) );
+    }
+
+    /**
+     * Adds a single record to the totals, from values which have
+     * already been decoded.
+     *
+     * @param quantity the stock quantity of the record.
+     * @param priceCents the unit price of the record, in cents.
+     */
+    public void add(int quantity, long priceCents)
+    {
+        this.count++;
+        this.totalQuantity += quantity;
+        this.totalValueCents = Math.addExact(this.totalValueCents, Math.multiplyExact(quantity, priceCents));
+
+        this.minQuantity = Math.min(this.minQuantity, quantity);
+        this.maxQuantity = Math.max(this.maxQuantity, quantity);
+        this.minUnitPriceCents = Math.min(this.minUnitPriceCents, priceCents);
+        this.maxUnitPriceCents = Math.max(this.maxUnitPriceCents, priceCents);
+    }
+
+    /**
+     * Adds the totals from another instance to this one.
+     *
+     * @param other the totals to add.
+     *
+     * @return this instance, for convenience.
+     */
+    public StockAggregate combine(StockAggregate other)
+    {
+        this.count += other.count;
+        this.totalQuantity += other.totalQuantity;
+        this.totalValueCents = Math.addExact(this.totalValueCents, other.totalValueCents);
+
+        this.minQuantity = Math.min(this.minQuantity, other.minQuantity);
+        this.maxQuantity = Math.max(this.maxQuantity, other.maxQuantity);
+        this.minUnitPriceCents = Math.min(this.minUnitPriceCents, other.minUnitPriceCents);
+        this.maxUnitPriceCents = Math.max(this.maxUnitPriceCents, other.maxUnitPriceCents);
+        return this;
+    }
+
+    /**
+     * @return the number of records seen.
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return the sum of the stock quantity of every record.
+     */
+    public long getTotalQuantity()
+    {
+        return this.totalQuantity;
+    }
+
+    /**
+     * @return the sum of stock quantity multiplied by unit price, in cents.
+     */
+    public long getTotalValueCents()
+    {
+        return this.totalValueCents;
+    }
+
+    /**
+     * @return the sum of stock quantity multiplied by unit price.
+     */
+    public BigDecimal getTotalValue()
+    {
+        return BigDecimal.valueOf(this.totalValueCents, 2);
+    }
+
+    /**
+     * @return the smallest stock quantity, or 0 if no records were seen.
+     */
+    public int getMinQuantity()
+    {
+        return this.count == 0 ? 0 : this.minQuantity;
+    }
+
+    /**
+     * @return the largest stock quantity, or 0 if no records were seen.
+     */
+    public int getMaxQuantity()
+    {
+        return this.count == 0 ? 0 : this.maxQuantity;
+    }
+
+    /**
+     * @return the smallest unit price in cents, or 0 if no records were seen.
+     */
+    public long getMinUnitPriceCents()
+    {
+        return this.count == 0 ? 0 : this.minUnitPriceCents;
+    }
+
+    /**
+     * @return the largest unit price in cents, or 0 if no records were seen.
+     */
+    public long getMaxUnitPriceCents()
+    {
+        return this.count == 0 ? 0 : this.maxUnitPriceCents;
+    }
+
+    @Override
+    public String toString()
+    {
+        String strFmt = "count=%d, quantity=%d, value=%s, quantity range=%d-%d, price range=%s-%s";
+        return String.format(strFmt, getCount(), getTotalQuantity(), getTotalValue(),
+                getMinQuantity(), getMaxQuantity(),
+                BigDecimal.valueOf(getMinUnitPriceCents(), 2), BigDecimal.valueOf(getMaxUnitPriceCents(), 2));
+    }
+}
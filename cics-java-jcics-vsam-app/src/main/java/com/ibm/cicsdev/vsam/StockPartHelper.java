@@ -80,14 +80,9 @@ public class StockPartHelper
         // Source of random numbers
         ThreadLocalRandom rand = ThreadLocalRandom.current();
         
-        // Create a new StockPart instance
-        StockPart sp = new StockPart();
-        
         // Generate a random part number as an integer (range is 0 <= n < 100,000,000)
-        sp.setPartId(rand.nextInt(100_000_000));
-
-        // Convert to a byte array using helper method
-        return getKey(sp);
+        // and encode directly as a key
+        return StockPartKey.toKey(rand.nextInt(100_000_000));
     }
 
     /**
@@ -98,14 +93,8 @@ public class StockPartHelper
      */
     public static byte[] getKeyZero() {
         
-        // Create a new StockPart instance
-        StockPart sp = new StockPart();
-        
         // Key zero is for stock part with ID of zero
-        sp.setPartId(0);
-
-        // Convert to a byte array using helper method
-        return getKey(sp);
+        return StockPartKey.keyZero();
     }
     
     /**
@@ -142,10 +131,8 @@ public class StockPartHelper
      */
     public static byte[] getKey(int partId)
     {
-        // Create a new StockPart instance and delegate
-        StockPart sp = new StockPart();
-        sp.setPartId(partId);
-        return getKey(sp);
+        // Encode directly, without building a StockPart instance
+        return StockPartKey.toKey(partId);
     }
     
     /**
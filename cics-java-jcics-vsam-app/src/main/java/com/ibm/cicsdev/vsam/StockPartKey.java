@@ -0,0 +1,217 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.ibm.cicsdev.bean.StockPart;
+
+/**
+ * Encodes and decodes the key of a {@link StockPart} record.
+ *
+ * The key is the PART-ID field, defined as PIC 9(8) DISPLAY. This is an
+ * unsigned zoned decimal number, stored as eight bytes with one digit in
+ * the low nibble of each byte and a zone of 0xF in the high nibble. In
+ * EBCDIC these are simply the characters '0' to '9'.
+ *
+ * Building a key through a {@link StockPart} instance allocates and
+ * initialises an 80-byte record just to copy eight bytes from it. The
+ * methods in this class write the key directly into a buffer supplied by
+ * the caller, converting two digits at a time using a precomputed table.
+ */
+public final class StockPartKey
+{
+    /**
+     * Length of a key in bytes.
+     */
+    public static final int LENGTH = 8;
+
+    /**
+     * The largest part ID that can be held in the key.
+     */
+    public static final int MAX_PART_ID = 99_999_999;
+
+    /**
+     * The zone nibble used for every digit of an unsigned zoned decimal.
+     */
+    private static final int ZONE = 0xF0;
+
+    /**
+     * Zoned decimal encoding of every value from 00 to 99. The two
+     * bytes for value <code>n</code> are at offsets <code>2n</code>
+     * and <code>2n + 1</code>.
+     */
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+
+    static {
+        // Build the table of digit pairs once
+        for ( int n = 0; n < 100; n++ ) {
+            DIGIT_PAIRS[2 * n] = (byte) (ZONE | (n / 10));
+            DIGIT_PAIRS[2 * n + 1] = (byte) (ZONE | (n % 10));
+        }
+    }
+
+    /**
+     * Key representing the lowest possible part ID. Do not modify.
+     */
+    private static final byte[] KEY_ZERO = toKey(0);
+
+    /**
+     * Prevent instantiation.
+     */
+    private StockPartKey()
+    {
+    }
+
+    /**
+     * Creates a new key for the supplied part ID.
+     *
+     * @param partId the part ID to encode.
+     *
+     * @return a new byte array holding the key.
+     */
+    public static byte[] toKey(int partId)
+    {
+        byte[] key = new byte[LENGTH];
+        encode(partId, key, 0);
+        return key;
+    }
+
+    /**
+     * Creates a new key for the lowest possible part ID.
+     *
+     * @return a new byte array holding the key.
+     */
+    public static byte[] keyZero()
+    {
+        return KEY_ZERO.clone();
+    }
+
+    /**
+     * Creates a key of all X'FF' bytes, which is higher than any valid key.
+     * Starting a browse at this key positions it at the end of the file,
+     * ready to read backwards from the last record.
+     *
+     * @return a new byte array holding the key.
+     */
+    public static byte[] keyEnd()
+    {
+        byte[] key = new byte[LENGTH];
+        Arrays.fill(key, (byte) 0xFF);
+        return key;
+    }
+
+    /**
+     * Encodes the supplied part ID into an existing byte array.
+     *
+     * @param partId the part ID to encode.
+     * @param dest the array to receive the key.
+     * @param offset the offset in the array at which to write the key.
+     */
+    public static void encode(int partId, byte[] dest, int offset)
+    {
+        checkRange(partId);
+
+        // Write the digits from right to left, two at a time
+        int value = partId;
+        for ( int i = offset + LENGTH - 2; i >= offset; i -= 2 ) {
+            int pair = (value % 100) * 2;
+            value /= 100;
+            dest[i] = DIGIT_PAIRS[pair];
+            dest[i + 1] = DIGIT_PAIRS[pair + 1];
+        }
+    }
+
+    /**
+     * Encodes the supplied part ID into a buffer at its current position,
+     * advancing the position by {@link #LENGTH} bytes.
+     *
+     * @param partId the part ID to encode.
+     * @param dest the buffer to receive the key.
+     */
+    public static void encode(int partId, ByteBuffer dest)
+    {
+        checkRange(partId);
+
+        // Write the digits from right to left, two at a time
+        int position = dest.position();
+        int value = partId;
+        for ( int i = position + LENGTH - 2; i >= position; i -= 2 ) {
+            int pair = (value % 100) * 2;
+            value /= 100;
+            dest.put(i, DIGIT_PAIRS[pair]);
+            dest.put(i + 1, DIGIT_PAIRS[pair + 1]);
+        }
+
+        // Advance past the key
+        dest.position(position + LENGTH);
+    }
+
+    /**
+     * Decodes a part ID from a key or record.
+     *
+     * @param key a key, or a record which starts with a key.
+     *
+     * @return the part ID.
+     */
+    public static int decode(byte[] key)
+    {
+        return decode(key, 0);
+    }
+
+    /**
+     * Decodes a part ID from a key held in a byte array.
+     *
+     * @param buf the array holding the key.
+     * @param offset the offset of the key in the array.
+     *
+     * @return the part ID.
+     */
+    public static int decode(byte[] buf, int offset)
+    {
+        int value = 0;
+        for ( int i = offset; i < offset + LENGTH; i++ ) {
+            value = value * 10 + (buf[i] & 0x0F);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes a part ID from a buffer at its current position, advancing
+     * the position by {@link #LENGTH} bytes.
+     *
+     * @param buf the buffer holding the key.
+     *
+     * @return the part ID.
+     */
+    public static int decode(ByteBuffer buf)
+    {
+        int value = 0;
+        for ( int i = 0; i < LENGTH; i++ ) {
+            value = value * 10 + (buf.get() & 0x0F);
+        }
+        return value;
+    }
+
+    /**
+     * Validates that a part ID can be represented in an eight digit key.
+     *
+     * @param partId the part ID to check.
+     */
+    private static void checkRange(int partId)
+    {
+        if ( partId < 0 || partId > MAX_PART_ID ) {
+            String strMsg = "Part ID %d is outside the range 0 to %d";
+            throw new IllegalArgumentException( String.format(strMsg, partId, MAX_PART_ID) );
+        }
+    }
+}
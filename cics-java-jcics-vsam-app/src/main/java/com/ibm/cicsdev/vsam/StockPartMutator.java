@@ -0,0 +1,192 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam;
+
+import java.math.BigDecimal;
+
+/**
+ * A writable view of a {@link com.ibm.cicsdev.bean.StockPart} record, used
+ * to apply several field changes to a record in a single read-modify-write
+ * cycle.
+ *
+ * Each setter encodes its value directly into the bytes of that field in the
+ * bound record, leaving the rest of the record untouched, and notes that the
+ * field has changed. The getters inherited from {@link StockPartView} read
+ * the record directly, so they always return the current value, including
+ * any changes already made.
+ *
+ * The part ID is the key of the record and cannot be changed, so
+ * {@link #setPartId(int)} and {@link #setInitialValues()} still throw
+ * {@link UnsupportedOperationException}.
+ */
+public class StockPartMutator extends StockPartView
+{
+    /*
+     * Bits recording which fields have been changed.
+     */
+    private static final int SUPPLIER_BIT = 1 << 0;
+    private static final int UNIT_PRICE_BIT = 1 << 1;
+    private static final int LAST_ORDER_DATE_BIT = 1 << 2;
+    private static final int STOCK_QUANTITY_BIT = 1 << 3;
+    private static final int NEXT_ORDER_DATE_BIT = 1 << 4;
+    private static final int DESCRIPTION_BIT = 1 << 5;
+
+    /**
+     * The fields changed since the record was bound.
+     */
+    private int changed;
+
+
+    /**
+     * Creates a mutator which is not yet bound to a record.
+     */
+    public StockPartMutator()
+    {
+        super();
+    }
+
+    /**
+     * Binds this mutator to a different record and clears the record of
+     * changed fields.
+     *
+     * @param record the record to modify, which must be at least
+     * {@link com.ibm.cicsdev.bean.StockPart#STOCK_PART_len} bytes long.
+     *
+     * @return this mutator, for convenience.
+     */
+    @Override
+    public StockPartMutator bind(byte[] record)
+    {
+        super.bind(record);
+        this.changed = 0;
+        return this;
+    }
+
+    /**
+     * @return true if any field has been changed since the record was bound.
+     */
+    public boolean isModified()
+    {
+        return this.changed != 0;
+    }
+
+    /**
+     * @return the number of fields changed since the record was bound,
+     * counting each date as a single field.
+     */
+    public int getModifiedFieldCount()
+    {
+        return Integer.bitCount(this.changed);
+    }
+
+
+    /*
+     * Setters which write only the bytes of the field being set.
+     */
+
+    @Override
+    public void setSupplier(int supplier)
+    {
+        SUPPLIER.putInt(supplier, this._byteBuffer);
+        this.changed |= SUPPLIER_BIT;
+    }
+
+    @Override
+    public void setUnitPrice(BigDecimal unitPrice)
+    {
+        UNIT_PRICE.putBigDecimal(unitPrice, this._byteBuffer);
+        this.changed |= UNIT_PRICE_BIT;
+    }
+
+    @Override
+    public void setLastOrderDateYy(String lastOrderDateYy)
+    {
+        LAST_ORDER_DATE_YY.putString(lastOrderDateYy, this._byteBuffer);
+        this.changed |= LAST_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setFiller_1(String filler_1)
+    {
+        FILLER_1.putString(filler_1, this._byteBuffer);
+        this.changed |= LAST_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setLastOrderDateMm(String lastOrderDateMm)
+    {
+        LAST_ORDER_DATE_MM.putString(lastOrderDateMm, this._byteBuffer);
+        this.changed |= LAST_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setFiller_2(String filler_2)
+    {
+        FILLER_2.putString(filler_2, this._byteBuffer);
+        this.changed |= LAST_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setLastOrderDateDd(String lastOrderDateDd)
+    {
+        LAST_ORDER_DATE_DD.putString(lastOrderDateDd, this._byteBuffer);
+        this.changed |= LAST_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setStockQuantity(int stockQuantity)
+    {
+        STOCK_QUANTITY.putInt(stockQuantity, this._byteBuffer);
+        this.changed |= STOCK_QUANTITY_BIT;
+    }
+
+    @Override
+    public void setNextOrderDateYy(String nextOrderDateYy)
+    {
+        NEXT_ORDER_DATE_YY.putString(nextOrderDateYy, this._byteBuffer);
+        this.changed |= NEXT_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setFiller_3(String filler_3)
+    {
+        FILLER_3.putString(filler_3, this._byteBuffer);
+        this.changed |= NEXT_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setNextOrderDateMm(String nextOrderDateMm)
+    {
+        NEXT_ORDER_DATE_MM.putString(nextOrderDateMm, this._byteBuffer);
+        this.changed |= NEXT_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setFiller_4(String filler_4)
+    {
+        FILLER_4.putString(filler_4, this._byteBuffer);
+        this.changed |= NEXT_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setNextOrderDateDd(String nextOrderDateDd)
+    {
+        NEXT_ORDER_DATE_DD.putString(nextOrderDateDd, this._byteBuffer);
+        this.changed |= NEXT_ORDER_DATE_BIT;
+    }
+
+    @Override
+    public void setDescription(String description)
+    {
+        DESCRIPTION.putString(description, this._byteBuffer);
+        this.changed |= DESCRIPTION_BIT;
+    }
+}
@@ -0,0 +1,316 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A read-only, memory-mapped view of a columnar snapshot of stock part
+ * records, written by {@link StockPartSnapshotWriter}.
+ *
+ * The file starts with a {@value #HEADER_LENGTH} byte header, holding the
+ * magic string <code>SPSNAP01</code>, the format version, the number of
+ * records, the time the snapshot was taken, and the file offset of each
+ * column. Each column then holds one big-endian primitive value per record,
+ * starting on an 8-byte boundary:
+ *
+ * <ul>
+ * <li>PART-ID, SUPPLIER and STOCK-QUANTITY as ints</li>
+ * <li>UNIT-PRICE as a long number of cents</li>
+ * <li>LAST-ORDER-DATE and NEXT-ORDER-DATE as ints of the form YYMMDD</li>
+ * <li>DESCRIPTION as UTF-8 bytes, located by an int column of offsets which
+ * has one more entry than there are records</li>
+ * </ul>
+ *
+ * The whole file is mapped into memory when the snapshot is opened, and each
+ * column is exposed as a read-only primitive buffer, so a query which scans a
+ * column reads memory rather than the VSAM file. Instances are immutable and
+ * may be shared between threads. The mapping is released when the instance
+ * is garbage collected. A snapshot file must be smaller than 2GB.
+ */
+public class StockPartSnapshot
+{
+    /**
+     * Identifies a snapshot file.
+     */
+    static final byte[] MAGIC = "SPSNAP01".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Version of the file layout.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Length of the header, which is followed by the first column.
+     */
+    public static final int HEADER_LENGTH = 128;
+
+    /*
+     * Position of each column in the header.
+     */
+    static final int PART_ID = 0;
+    static final int SUPPLIER = 1;
+    static final int UNIT_PRICE_CENTS = 2;
+    static final int LAST_ORDER_DATE = 3;
+    static final int STOCK_QUANTITY = 4;
+    static final int NEXT_ORDER_DATE = 5;
+    static final int DESCRIPTION_OFFSETS = 6;
+    static final int DESCRIPTION_BYTES = 7;
+    static final int COLUMN_COUNT = 8;
+
+    /**
+     * The whole file.
+     */
+    private final MappedByteBuffer map;
+
+    /**
+     * Number of records in the snapshot.
+     */
+    private final int rows;
+
+    /**
+     * Time at which the snapshot was written.
+     */
+    private final long created;
+
+    /*
+     * Views of each column.
+     */
+    private final IntBuffer partIds;
+    private final IntBuffer suppliers;
+    private final LongBuffer unitPriceCents;
+    private final IntBuffer lastOrderDates;
+    private final IntBuffer stockQuantities;
+    private final IntBuffer nextOrderDates;
+    private final IntBuffer descriptionOffsets;
+    private final ByteBuffer descriptionBytes;
+
+    /**
+     * Maps a snapshot file into memory.
+     *
+     * @param path the snapshot file to read.
+     *
+     * @throws IOException if the file could not be read, or is not
+     * a snapshot file.
+     */
+    public StockPartSnapshot(Path path) throws IOException
+    {
+        // Map the whole file, after which the channel is no longer required
+        try ( FileChannel fc = FileChannel.open(path, StandardOpenOption.READ) ) {
+            this.map = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+
+        // Check the header
+        byte[] magic = new byte[MAGIC.length];
+        if ( this.map.capacity() < HEADER_LENGTH ) {
+            throw new IOException("File is too short to be a snapshot: " + path);
+        }
+        this.map.get(0, magic);
+        if ( !Arrays.equals(magic, MAGIC) ) {
+            throw new IOException("File is not a snapshot: " + path);
+        }
+        int version = this.map.getInt(MAGIC.length);
+        if ( version != VERSION ) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + path);
+        }
+
+        this.rows = this.map.getInt(MAGIC.length + 4);
+        this.created = this.map.getLong(MAGIC.length + 8);
+
+        // Locate each column from the offsets in the header
+        long[] offsets = new long[COLUMN_COUNT];
+        for ( int i = 0; i < COLUMN_COUNT; i++ ) {
+            offsets[i] = this.map.getLong(MAGIC.length + 16 + 8 * i);
+        }
+
+        this.partIds = column(offsets[PART_ID], 4L * this.rows).asIntBuffer();
+        this.suppliers = column(offsets[SUPPLIER], 4L * this.rows).asIntBuffer();
+        this.unitPriceCents = column(offsets[UNIT_PRICE_CENTS], 8L * this.rows).asLongBuffer();
+        this.lastOrderDates = column(offsets[LAST_ORDER_DATE], 4L * this.rows).asIntBuffer();
+        this.stockQuantities = column(offsets[STOCK_QUANTITY], 4L * this.rows).asIntBuffer();
+        this.nextOrderDates = column(offsets[NEXT_ORDER_DATE], 4L * this.rows).asIntBuffer();
+        this.descriptionOffsets = column(offsets[DESCRIPTION_OFFSETS], 4L * (this.rows + 1)).asIntBuffer();
+        this.descriptionBytes = column(offsets[DESCRIPTION_BYTES], this.descriptionOffsets.get(this.rows));
+    }
+
+    /**
+     * @return the number of records in the snapshot.
+     */
+    public int getRowCount()
+    {
+        return this.rows;
+    }
+
+    /**
+     * @return the time at which the snapshot was written, in milliseconds
+     * since the epoch.
+     */
+    public long getCreated()
+    {
+        return this.created;
+    }
+
+
+    /*
+     * Whole columns, for scanning. Each call returns a new buffer positioned
+     * at the first record, so callers may move it freely.
+     */
+
+    /**
+     * @return the PART-ID column.
+     */
+    public IntBuffer partIds()
+    {
+        return this.partIds.duplicate();
+    }
+
+    /**
+     * @return the SUPPLIER column.
+     */
+    public IntBuffer suppliers()
+    {
+        return this.suppliers.duplicate();
+    }
+
+    /**
+     * @return the UNIT-PRICE column, in cents.
+     */
+    public LongBuffer unitPriceCents()
+    {
+        return this.unitPriceCents.duplicate();
+    }
+
+    /**
+     * @return the LAST-ORDER-DATE column, as YYMMDD.
+     */
+    public IntBuffer lastOrderDates()
+    {
+        return this.lastOrderDates.duplicate();
+    }
+
+    /**
+     * @return the STOCK-QUANTITY column.
+     */
+    public IntBuffer stockQuantities()
+    {
+        return this.stockQuantities.duplicate();
+    }
+
+    /**
+     * @return the NEXT-ORDER-DATE column, as YYMMDD.
+     */
+    public IntBuffer nextOrderDates()
+    {
+        return this.nextOrderDates.duplicate();
+    }
+
+
+    /*
+     * Single values, by record number from 0.
+     */
+
+    /**
+     * @return the part ID of the specified record.
+     */
+    public int getPartId(int row)
+    {
+        return this.partIds.get(row);
+    }
+
+    /**
+     * @return the supplier of the specified record.
+     */
+    public int getSupplier(int row)
+    {
+        return this.suppliers.get(row);
+    }
+
+    /**
+     * @return the unit price of the specified record, in cents.
+     */
+    public long getUnitPriceCents(int row)
+    {
+        return this.unitPriceCents.get(row);
+    }
+
+    /**
+     * @return the last order date of the specified record, as YYMMDD.
+     */
+    public int getLastOrderDate(int row)
+    {
+        return this.lastOrderDates.get(row);
+    }
+
+    /**
+     * @return the stock quantity of the specified record.
+     */
+    public int getStockQuantity(int row)
+    {
+        return this.stockQuantities.get(row);
+    }
+
+    /**
+     * @return the next order date of the specified record, as YYMMDD.
+     */
+    public int getNextOrderDate(int row)
+    {
+        return this.nextOrderDates.get(row);
+    }
+
+    /**
+     * @return the description of the specified record, without trailing spaces.
+     */
+    public String getDescription(int row)
+    {
+        int start = this.descriptionOffsets.get(row);
+        int end = this.descriptionOffsets.get(row + 1);
+
+        byte[] bytes = new byte[end - start];
+        this.descriptionBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds every record in the snapshot to an aggregate, reading only the
+     * stock quantity and unit price columns.
+     *
+     * @return the totals for the whole snapshot.
+     */
+    public StockAggregate aggregate()
+    {
+        StockAggregate agg = new StockAggregate();
+        for ( int row = 0; row < this.rows; row++ ) {
+            agg.add( this.stockQuantities.get(row), this.unitPriceCents.get(row) );
+        }
+        return agg;
+    }
+
+    /**
+     * Creates a read-only view of a single column.
+     */
+    private ByteBuffer column(long offset, long length) throws IOException
+    {
+        if ( offset < HEADER_LENGTH || offset + length > this.map.capacity() ) {
+            throw new IOException("Snapshot column lies outside the file");
+        }
+
+        return this.map.slice( (int) offset, (int) length ).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,336 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Writes a columnar snapshot of stock part records to a local file, which can
+ * then be read without any VSAM I/O using {@link StockPartSnapshot}.
+ *
+ * An instance is passed as the consumer to any of the browse methods which
+ * accept one, so that a whole VSAM file is read once. Each field is decoded
+ * from the record as it arrives and appended to a temporary file for that
+ * column, through a small direct buffer which is reused for the whole
+ * browse. When the writer is closed, the header is written to the snapshot
+ * file and each column is copied in behind it, so the memory used does not
+ * depend on the number of records. The layout of the file is described by
+ * {@link StockPartSnapshot}.
+ *
+ * The temporary files are created in the same directory as the snapshot,
+ * and are deleted when the writer is closed or discarded.
+ */
+public class StockPartSnapshotWriter implements Consumer<StockPartView>, Closeable
+{
+    /**
+     * Size of the buffer used for each column.
+     */
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * The file to write.
+     */
+    private final Path path;
+
+    /**
+     * The columns, in the order given by {@link StockPartSnapshot}.
+     */
+    private final Column[] columns = new Column[StockPartSnapshot.COLUMN_COUNT];
+
+    /**
+     * Total length of the descriptions written so far.
+     */
+    private int descriptionLength;
+
+    /**
+     * Number of records added.
+     */
+    private int rows;
+
+    /**
+     * True once the file has been written or discarded.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a writer for the supplied file, which is replaced if it
+     * already exists when the writer is closed.
+     *
+     * @param path the file to write.
+     *
+     * @throws IOException if the temporary files could not be created.
+     */
+    public StockPartSnapshotWriter(Path path) throws IOException
+    {
+        this.path = path;
+
+        // Create a temporary file for each column alongside the snapshot
+        Path dir = path.toAbsolutePath().getParent();
+        try {
+            for ( int i = 0; i < this.columns.length; i++ ) {
+                this.columns[i] = new Column(dir);
+            }
+
+            // The description offsets start with the offset of the first description
+            this.columns[StockPartSnapshot.DESCRIPTION_OFFSETS].putInt(0);
+        }
+        catch (IOException ioe) {
+            discard();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Adds a single record to the snapshot.
+     *
+     * @param view the record to add.
+     *
+     * @throws UncheckedIOException if a column could not be written.
+     */
+    @Override
+    public void accept(StockPartView view)
+    {
+        if ( this.closed ) {
+            throw new IllegalStateException("Snapshot has already been written");
+        }
+
+        // Encode the description first, to check it fits
+        byte[] desc = view.getDescription().trim().getBytes(StandardCharsets.UTF_8);
+        if ( desc.length > Integer.MAX_VALUE - this.descriptionLength ) {
+            throw new IllegalStateException("Snapshot descriptions exceed 2GB");
+        }
+        this.descriptionLength += desc.length;
+
+        try {
+            // Decode the fixed length fields directly from the record
+            byte[] record = view.getByteBuffer();
+            this.columns[StockPartSnapshot.PART_ID].putInt( StockPartView.partIdOf(record) );
+            this.columns[StockPartSnapshot.SUPPLIER].putInt( StockPartView.supplierOf(record) );
+            this.columns[StockPartSnapshot.UNIT_PRICE_CENTS].putLong( StockPartView.unitPriceCentsOf(record) );
+            this.columns[StockPartSnapshot.LAST_ORDER_DATE].putInt(
+                    decodeDate(record, StockPartView.LAST_ORDER_DATE_offset) );
+            this.columns[StockPartSnapshot.STOCK_QUANTITY].putInt( StockPartView.stockQuantityOf(record) );
+            this.columns[StockPartSnapshot.NEXT_ORDER_DATE].putInt(
+                    decodeDate(record, StockPartView.NEXT_ORDER_DATE_offset) );
+
+            // Append the description, and the offset at which it ends
+            this.columns[StockPartSnapshot.DESCRIPTION_BYTES].put(desc);
+            this.columns[StockPartSnapshot.DESCRIPTION_OFFSETS].putInt(this.descriptionLength);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        this.rows++;
+    }
+
+    /**
+     * @return the number of records added so far.
+     */
+    public int getRowCount()
+    {
+        return this.rows;
+    }
+
+    /**
+     * Writes the snapshot to the file, and deletes the temporary files.
+     * Calling this method more than once has no further effect.
+     *
+     * @throws IOException if the file could not be written.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( this.closed ) {
+            return;
+        }
+
+        try {
+            // Work out where each column starts
+            long[] offsets = new long[StockPartSnapshot.COLUMN_COUNT];
+            long pos = StockPartSnapshot.HEADER_LENGTH;
+            for ( int i = 0; i < offsets.length; i++ ) {
+                this.columns[i].flush();
+                offsets[i] = pos;
+                pos = align(pos + this.columns[i].size);
+            }
+
+            try ( FileChannel fc = FileChannel.open(this.path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE) ) {
+
+                // Write the header
+                ByteBuffer header = ByteBuffer.allocate(StockPartSnapshot.HEADER_LENGTH);
+                header.put(StockPartSnapshot.MAGIC);
+                header.putInt(StockPartSnapshot.VERSION);
+                header.putInt(this.rows);
+                header.putLong(System.currentTimeMillis());
+                for ( long offset : offsets ) {
+                    header.putLong(offset);
+                }
+                header.clear();
+                while ( header.hasRemaining() ) {
+                    fc.write(header, header.position());
+                }
+
+                // Copy each column in behind the header
+                for ( int i = 0; i < offsets.length; i++ ) {
+                    this.columns[i].copyTo(fc, offsets[i]);
+                }
+
+                // Make sure the snapshot is on disk before it is used
+                fc.force(true);
+            }
+        }
+        finally {
+            discard();
+        }
+    }
+
+    /**
+     * Deletes the temporary files without writing the snapshot, for example
+     * because the browse failed. Calling this method more than once, or
+     * after {@link #close()}, has no further effect.
+     */
+    public void discard()
+    {
+        this.closed = true;
+
+        for ( Column c : this.columns ) {
+            if ( c != null ) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Decodes a date held as YY-MM-DD into a single integer of the form YYMMDD.
+     */
+    private static int decodeDate(byte[] record, int offset)
+    {
+        return StockPartView.decodeZoned(record, offset, 2) * 10_000
+                + StockPartView.decodeZoned(record, offset + 3, 2) * 100
+                + StockPartView.decodeZoned(record, offset + 6, 2);
+    }
+
+    /**
+     * Rounds a file position up to the next multiple of 8 bytes, so that
+     * every column is aligned for its element type.
+     */
+    private static long align(long pos)
+    {
+        return (pos + 7) & ~7L;
+    }
+
+    /**
+     * A single column, appended to a temporary file through a reused buffer.
+     */
+    private static final class Column
+    {
+        /**
+         * The temporary file, deleted when the channel is closed.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Values not yet written to the temporary file.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /**
+         * Length of the column, once the buffer has been flushed.
+         */
+        private long size;
+
+        private Column(Path dir) throws IOException
+        {
+            Path tmp = Files.createTempFile(dir, "spsnap", ".col");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        private void putInt(int value) throws IOException
+        {
+            if ( this.buffer.remaining() < 4 ) {
+                flush();
+            }
+            this.buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException
+        {
+            if ( this.buffer.remaining() < 8 ) {
+                flush();
+            }
+            this.buffer.putLong(value);
+        }
+
+        private void put(byte[] bytes) throws IOException
+        {
+            // Copy in pieces, as a description may not fit in the space left
+            int pos = 0;
+            while ( pos < bytes.length ) {
+                if ( !this.buffer.hasRemaining() ) {
+                    flush();
+                }
+                int len = Math.min(bytes.length - pos, this.buffer.remaining());
+                this.buffer.put(bytes, pos, len);
+                pos += len;
+            }
+        }
+
+        /**
+         * Appends the buffered values to the temporary file.
+         */
+        private void flush() throws IOException
+        {
+            this.buffer.flip();
+            while ( this.buffer.hasRemaining() ) {
+                this.size += this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        /**
+         * Copies the whole temporary file to the supplied position, which
+         * may be beyond the current end of the destination.
+         */
+        private void copyTo(FileChannel dest, long pos) throws IOException
+        {
+            dest.position(pos);
+            long copied = 0;
+            while ( copied < this.size ) {
+                copied += this.channel.transferTo(copied, this.size - copied, dest);
+            }
+        }
+
+        /**
+         * Closes the temporary file, which deletes it.
+         */
+        private void close()
+        {
+            try {
+                this.channel.close();
+            }
+            catch (IOException ioe) {
+                // Nothing more can be done with the temporary file
+            }
+        }
+    }
+}
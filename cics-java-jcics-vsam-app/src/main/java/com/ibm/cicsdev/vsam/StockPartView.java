@@ -0,0 +1,423 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam;
+
+import java.math.BigDecimal;
+
+import com.ibm.cicsdev.bean.StockPart;
+
+/**
+ * A read-only view of a {@link StockPart} record which can be rebound to a
+ * different record buffer, allowing a single instance to be reused for every
+ * record in a browse.
+ *
+ * The generated {@link StockPart} class caches each field as an object the
+ * first time it is read. This class instead decodes the numeric fields
+ * directly from the 80-byte record on every call, so reading the part ID,
+ * supplier, stock quantity, or unit price (in cents) does not allocate any
+ * objects. Methods which return a {@link String} or {@link BigDecimal} must
+ * still create a new object.
+ *
+ * A view is only valid until it is rebound, so callers should copy any
+ * values they need to keep. All setter methods throw
+ * {@link UnsupportedOperationException}; use {@link StockPartMutator} to
+ * change a record in place.
+ */
+public class StockPartView extends StockPart
+{
+    /**
+     * Offset of the PART-ID field, PIC 9(8) DISPLAY.
+     */
+    public static final int PART_ID_OFFSET = 0;
+
+    /**
+     * Offset of the SUPPLIER field, PIC 9(8) DISPLAY.
+     */
+    public static final int SUPPLIER_OFFSET = 8;
+
+    /**
+     * Offset of the UNIT-PRICE field, PIC 99999V99 PACKED-DECIMAL.
+     */
+    public static final int UNIT_PRICE_OFFSET = 16;
+
+    /**
+     * Length of the UNIT-PRICE field in bytes.
+     */
+    public static final int UNIT_PRICE_LENGTH = 4;
+
+    /**
+     * Offset of the STOCK-QUANTITY field, PIC 9(8) BINARY.
+     */
+    public static final int STOCK_QUANTITY_OFFSET = 28;
+
+    /**
+     * Offset of the DESCRIPTION field, PIC X(40).
+     */
+    public static final int DESCRIPTION_OFFSET = 40;
+
+    /**
+     * Length of the DESCRIPTION field in bytes.
+     */
+    public static final int DESCRIPTION_LENGTH = 40;
+
+
+    /**
+     * Creates a view which is not yet bound to a record.
+     */
+    public StockPartView()
+    {
+        // Avoid the default constructor, which allocates and initialises a buffer
+        super((byte[]) null);
+    }
+
+    /**
+     * Creates a view of the supplied record.
+     *
+     * @param record the record to view.
+     */
+    public StockPartView(byte[] record)
+    {
+        this();
+        bind(record);
+    }
+
+    /**
+     * Binds this view to a different record, replacing the previous one.
+     *
+     * @param record the record to view, which must be at least
+     * {@link StockPart#STOCK_PART_len} bytes long.
+     *
+     * @return this view, for convenience.
+     */
+    public StockPartView bind(byte[] record)
+    {
+        // Guard against a short record, which would otherwise fail later
+        if ( record.length < STOCK_PART_len ) {
+            String strMsg = "Record length %d is less than %d";
+            throw new IllegalArgumentException( String.format(strMsg, record.length, STOCK_PART_len) );
+        }
+
+        // Nothing is cached, so simply replace the buffer
+        this._byteBuffer = record;
+        return this;
+    }
+
+
+    /*
+     * Static decoders, usable directly against a record buffer.
+     */
+
+    /**
+     * Decodes the part ID from the supplied record.
+     *
+     * @param record the flat byte structure of a StockPart record.
+     *
+     * @return the part ID.
+     */
+    public static int partIdOf(byte[] record)
+    {
+        return StockPartKey.decode(record, PART_ID_OFFSET);
+    }
+
+    /**
+     * Decodes the supplier from the supplied record.
+     *
+     * @param record the flat byte structure of a StockPart record.
+     *
+     * @return the supplier.
+     */
+    public static int supplierOf(byte[] record)
+    {
+        return decodeZoned(record, SUPPLIER_OFFSET, 8);
+    }
+
+    /**
+     * Decodes the stock quantity from the supplied record.
+     *
+     * @param record the flat byte structure of a StockPart record.
+     *
+     * @return the stock quantity.
+     */
+    public static int stockQuantityOf(byte[] record)
+    {
+        // Big-endian four byte binary integer
+        int o = STOCK_QUANTITY_OFFSET;
+        return ((record[o] & 0xFF) << 24)
+                | ((record[o + 1] & 0xFF) << 16)
+                | ((record[o + 2] & 0xFF) << 8)
+                | (record[o + 3] & 0xFF);
+    }
+
+    /**
+     * Decodes the unit price from the supplied record as a whole number
+     * of cents.
+     *
+     * @param record the flat byte structure of a StockPart record.
+     *
+     * @return the unit price multiplied by 100.
+     */
+    public static long unitPriceCentsOf(byte[] record)
+    {
+        // Packed decimal: two digits per byte, with the sign in the final nibble
+        long value = 0;
+        int last = UNIT_PRICE_OFFSET + UNIT_PRICE_LENGTH - 1;
+
+        for ( int i = UNIT_PRICE_OFFSET; i < last; i++ ) {
+            value = value * 100 + ((record[i] >> 4) & 0x0F) * 10 + (record[i] & 0x0F);
+        }
+
+        // Final byte holds one digit and the sign
+        value = value * 10 + ((record[last] >> 4) & 0x0F);
+        return (record[last] & 0x0F) == 0x0D ? -value : value;
+    }
+
+    /**
+     * Decodes an unsigned zoned decimal field. The digit is held in the low
+     * nibble of each byte, which is the case in both EBCDIC and ASCII.
+     *
+     * @param buf the buffer holding the field.
+     * @param offset the offset of the field in the buffer.
+     * @param length the number of digits in the field.
+     *
+     * @return the decoded value.
+     */
+    static int decodeZoned(byte[] buf, int offset, int length)
+    {
+        int value = 0;
+        for ( int i = offset; i < offset + length; i++ ) {
+            value = value * 10 + (buf[i] & 0x0F);
+        }
+        return value;
+    }
+
+
+    /*
+     * Allocation-free getters.
+     */
+
+    @Override
+    public int getPartId()
+    {
+        return partIdOf(this._byteBuffer);
+    }
+
+    @Override
+    public int getSupplier()
+    {
+        return supplierOf(this._byteBuffer);
+    }
+
+    @Override
+    public int getStockQuantity()
+    {
+        return stockQuantityOf(this._byteBuffer);
+    }
+
+    /**
+     * Returns the unit price as a whole number of cents, without
+     * creating a {@link BigDecimal}.
+     *
+     * @return the unit price multiplied by 100.
+     */
+    public long getUnitPriceCents()
+    {
+        return unitPriceCentsOf(this._byteBuffer);
+    }
+
+
+    /*
+     * Getters which create a new object on every call.
+     */
+
+    @Override
+    public BigDecimal getUnitPrice()
+    {
+        return BigDecimal.valueOf(getUnitPriceCents(), 2);
+    }
+
+    @Override
+    public String getLastOrderDateYy()
+    {
+        return LAST_ORDER_DATE_YY.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getFiller_1()
+    {
+        return FILLER_1.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getLastOrderDateMm()
+    {
+        return LAST_ORDER_DATE_MM.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getFiller_2()
+    {
+        return FILLER_2.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getLastOrderDateDd()
+    {
+        return LAST_ORDER_DATE_DD.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getNextOrderDateYy()
+    {
+        return NEXT_ORDER_DATE_YY.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getFiller_3()
+    {
+        return FILLER_3.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getNextOrderDateMm()
+    {
+        return NEXT_ORDER_DATE_MM.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getFiller_4()
+    {
+        return FILLER_4.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getNextOrderDateDd()
+    {
+        return NEXT_ORDER_DATE_DD.getString(this._byteBuffer);
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return DESCRIPTION.getString(this._byteBuffer);
+    }
+
+    /**
+     * Creates a standalone copy of the current record, which remains
+     * valid after this view is rebound.
+     *
+     * @return a new {@link StockPart} holding a copy of the record.
+     */
+    public StockPart copy()
+    {
+        return new StockPart( this._byteBuffer.clone() );
+    }
+
+
+    /*
+     * The view is read-only.
+     */
+
+    @Override
+    public void setInitialValues()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPartId(int partId)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setSupplier(int supplier)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setUnitPrice(BigDecimal unitPrice)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLastOrderDateYy(String lastOrderDateYy)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setFiller_1(String filler_1)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLastOrderDateMm(String lastOrderDateMm)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setFiller_2(String filler_2)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLastOrderDateDd(String lastOrderDateDd)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setStockQuantity(int stockQuantity)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setNextOrderDateYy(String nextOrderDateYy)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setFiller_3(String filler_3)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setNextOrderDateMm(String nextOrderDateMm)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setFiller_4(String filler_4)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setNextOrderDateDd(String nextOrderDateDd)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setDescription(String description)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
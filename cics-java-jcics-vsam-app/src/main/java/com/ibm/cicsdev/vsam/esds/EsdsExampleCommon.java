@@ -10,8 +10,12 @@
 
 package com.ibm.cicsdev.vsam.esds;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 
 import com.ibm.cics.server.CicsConditionException;
 import com.ibm.cics.server.DuplicateRecordException;
@@ -23,6 +27,9 @@ import com.ibm.cics.server.RecordHolder;
 import com.ibm.cics.server.RecordNotFoundException;
 import com.ibm.cics.server.Task;
 import com.ibm.cicsdev.bean.StockPart;
+import com.ibm.cicsdev.vsam.StockPartSnapshot;
+import com.ibm.cicsdev.vsam.StockPartSnapshotWriter;
+import com.ibm.cicsdev.vsam.StockPartView;
 import com.ibm.cicsdev.vsam.VsamExampleCommon;
 
 /**
@@ -31,6 +38,14 @@ import com.ibm.cicsdev.vsam.VsamExampleCommon;
  * 
  * Records in an ESDS file are located using their Relative Byte
  * Address (RBA).
+ * 
+ * By default, the file is accessed using extended (64-bit) RBAs, which
+ * the JCICS API requests with {@link ESDS#setXRBA(boolean)}. This allows
+ * the file to be defined with extended addressability and grow beyond 4GB.
+ * Extended RBAs may also be used with an ESDS that is not extended, but
+ * 4-byte RBAs cannot be used with an extended ESDS. Every RBA in these
+ * samples, including those held by {@link EsdsRbaIndex} and
+ * {@link EsdsTailReader}, is therefore a <code>long</code>.
  */
 public class EsdsExampleCommon extends VsamExampleCommon
 {
@@ -46,13 +61,53 @@ public class EsdsExampleCommon extends VsamExampleCommon
     private final ESDS esds;
     
     /**
-     * Constructor to initialise the reference to the sample file.
+     * An optional index from part ID to RBA, maintained as records are
+     * added, or <code>null</code> if there is none.
+     */
+    private final EsdsRbaIndex rbaIndex;
+    
+    /**
+     * Constructor to initialise the reference to the sample file, using
+     * extended RBAs.
      */    
     public EsdsExampleCommon()
+    {
+        this(null);
+    }
+    
+    /**
+     * Constructor to initialise the reference to the sample file, and to
+     * maintain the supplied part ID index as records are added.
+     * 
+     * The index should be held in a static field so that it is shared by
+     * every task in the JVM server.
+     * 
+     * @param rbaIndex the index to maintain and to use for
+     * {@link #readByPartId(int)}, or <code>null</code>.
+     */
+    public EsdsExampleCommon(EsdsRbaIndex rbaIndex)
+    {
+        this(rbaIndex, true);
+    }
+    
+    /**
+     * Constructor to initialise the reference to the sample file, with an
+     * optional part ID index, and to select the form of RBA used.
+     * 
+     * @param rbaIndex the index to maintain and to use for
+     * {@link #readByPartId(int)}, or <code>null</code>.
+     * @param xrba true to use extended (64-bit) RBAs, or false to use
+     * 4-byte RBAs, which limit the file to 4GB.
+     */
+    public EsdsExampleCommon(EsdsRbaIndex rbaIndex, boolean xrba)
     {
         // Create a new ESDS instance and initialise
         this.esds = new ESDS();
-        this.esds.setName(FILE_NAME);        
+        this.esds.setName(FILE_NAME);
+        this.esds.setXRBA(xrba);
+        
+        // Save the optional index
+        this.rbaIndex = rbaIndex;
     }
 
     /**
@@ -71,6 +126,11 @@ public class EsdsExampleCommon extends VsamExampleCommon
             // Write the record into the file
             long rba = this.esds.write(record);
             
+            // Record where this part was written
+            if ( this.rbaIndex != null ) {
+                this.rbaIndex.put(sp.getPartId(), rba);
+            }
+            
             // Return the new RBA for this record
             return rba;
         }
@@ -205,6 +265,67 @@ public class EsdsExampleCommon extends VsamExampleCommon
         }
     }
 
+    /**
+     * Reads the record for a part from the VSAM ESDS file, using the part ID
+     * index to find its RBA, returning <code>null</code> rather than failing
+     * if the part is not present.
+     * 
+     * When the index holds the part in memory, this takes a single READ of
+     * the ESDS file. The part ID of the record read is checked, and if the
+     * index was out of step with the file, the entry is read again from the
+     * index file.
+     * 
+     * @param partId the part ID of the record to locate.
+     * 
+     * @return a {@link StockPart} instance representing the record, or
+     * <code>null</code> if there is no record for the specified part.
+     * 
+     * @throws IllegalStateException if no part ID index is in use.
+     */
+    public StockPart readByPartId(int partId)
+    {
+        if ( this.rbaIndex == null ) {
+            throw new IllegalStateException("No part ID index is in use");
+        }
+        
+        // Holder object to receive the data
+        RecordHolder rh = new RecordHolder();
+        
+        // Allow one retry if the in-memory entry turns out to be stale
+        for ( int attempt = 0; attempt < 2; attempt++ ) {
+            
+            long rba = this.rbaIndex.get(partId);
+            if ( rba == EsdsRbaIndex.NO_RBA ) {
+                return null;
+            }
+            
+            try {
+                // Read the record at the indexed RBA
+                this.esds.read(rba, rh);
+                
+                // Check it is the record we wanted
+                if ( StockPartView.partIdOf(rh.getValue()) == partId ) {
+                    return new StockPart( rh.getValue() );
+                }
+            }
+            catch (RecordNotFoundException rnfe) {
+                // Fall through to refresh the entry
+            }
+            catch (CicsConditionException cce) {
+                // Some other CICS failure
+                throw new RuntimeException(cce);
+            }
+            
+            // The entry was stale - read it again from the index file
+            this.rbaIndex.forget(partId);
+        }
+        
+        // The index file itself does not match the ESDS file
+        String strMsg = "Index entry for part 0x%08X does not match file %s";
+        Task.getTask().out.println( String.format(strMsg, partId, this.esds.getName()) );
+        return null;
+    }
+
     /**
      * Provides an example of browsing a VSAM ESDS dataset.
      * 
@@ -265,4 +386,173 @@ public class EsdsExampleCommon extends VsamExampleCommon
         // Return the list
         return list;
     }
+
+    /**
+     * Provides an example of browsing a VSAM ESDS dataset without creating
+     * a new object for each record.
+     * 
+     * Each record is passed to the supplied consumer through the same
+     * {@link StockPartView} instance, which is rebound to the record just read.
+     * The consumer must therefore copy any values it needs to keep, for example
+     * by calling {@link StockPartView#copy()}.
+     * 
+     * @param rbaStart the RBA from which the browse should begin.
+     * @param count the maximum number of records to pass to the consumer.
+     * @param consumer the callback to receive each record.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    public int browse(long rbaStart, int count, Consumer<? super StockPartView> consumer)
+    {
+        return browse( rbaStart, count, (view, rba) -> consumer.accept(view) );
+    }
+
+    /**
+     * Provides an example of browsing a VSAM ESDS dataset without creating
+     * a new object for each record, passing the RBA of each record to the
+     * consumer along with the record itself.
+     * 
+     * As for {@link #browse(long, int, Consumer)}, the same
+     * {@link StockPartView} instance is reused for every record.
+     * 
+     * @param rbaStart the RBA from which the browse should begin.
+     * @param count the maximum number of records to pass to the consumer.
+     * @param consumer the callback to receive each record and its RBA.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    public int browse(long rbaStart, int count, ObjLongConsumer<? super StockPartView> consumer)
+    {
+        return browseRange(rbaStart, Long.MAX_VALUE, count, consumer);
+    }
+
+    /**
+     * Provides an example of browsing a range of RBAs in a VSAM ESDS dataset,
+     * passing each record and its RBA to the supplied consumer through a
+     * reused {@link StockPartView}.
+     * 
+     * The browse must start at the RBA of a record, and ends as soon as a
+     * record at or beyond the end of the range is read.
+     * 
+     * @param rbaFrom the RBA of the first record in the range.
+     * @param rbaTo the RBA at which the range ends, exclusive.
+     * @param consumer the callback to receive each record and its RBA.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    public int browseRange(long rbaFrom, long rbaTo, ObjLongConsumer<? super StockPartView> consumer)
+    {
+        return browseRange(rbaFrom, rbaTo, Integer.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Browses a range of RBAs, stopping at the end of the range or after
+     * the specified number of records, whichever comes first.
+     * 
+     * @param rbaFrom the RBA of the first record in the range.
+     * @param rbaTo the RBA at which the range ends, exclusive.
+     * @param count the maximum number of records to pass to the consumer.
+     * @param consumer the callback to receive each record and its RBA.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    private int browseRange(long rbaFrom, long rbaTo, int count, ObjLongConsumer<? super StockPartView> consumer)
+    {
+        // Holder object to receive the data
+        RecordHolder rh = new RecordHolder();
+        
+        // The single view reused for every record
+        StockPartView view = new StockPartView();
+        
+        // Number of records processed
+        int processed = 0;
+        
+        try {            
+            // Start the browse of the file
+            ESDS_Browse esdsBrowse = this.esds.startBrowse(rbaFrom);
+            
+            try {
+                // Loop until we reach maximum count
+                while ( processed < count ) {
+                    
+                    // Read a record from the file
+                    long rba = esdsBrowse.next(rh);
+                    
+                    // Stop once we pass the end of the range
+                    if ( rba >= rbaTo ) {
+                        break;
+                    }
+                    
+                    // Rebind the view and pass to the consumer
+                    consumer.accept( view.bind(rh.getValue()), rba );
+                    processed++;
+                }
+            }
+            catch (EndOfFileException eof) {
+                // Normal termination of loop - no further records
+            }
+            finally {
+                // Always end the browse, even if the consumer failed
+                esdsBrowse.end();
+            }
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Initial browse failed - no records matching the supplied RBA
+        }
+        catch (InvalidRequestException ire) {
+            
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable or updateable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.esds.getName()) );
+            }
+            
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+        
+        // Return the number of records processed
+        return processed;
+    }
+
+    /**
+     * Writes a columnar snapshot of every record in the ESDS file to a local
+     * file, using a single browse. The snapshot can then be read repeatedly
+     * using {@link StockPartSnapshot} without any further VSAM I/O.
+     * 
+     * @param path the local file to write, which is replaced if it exists.
+     * 
+     * @return the number of records written to the snapshot.
+     * 
+     * @throws IOException if the snapshot could not be written.
+     */
+    public int exportSnapshot(Path path) throws IOException
+    {
+        StockPartSnapshotWriter writer = new StockPartSnapshotWriter(path);
+        
+        // Read every record once, appending each field to its column
+        try {
+            browse(0, Integer.MAX_VALUE, writer);
+        }
+        catch (RuntimeException re) {
+            // Delete the partial columns before propagating the failure
+            writer.discard();
+            throw re;
+        }
+        
+        // Only write the file once the whole browse has succeeded
+        writer.close();
+        int rows = writer.getRowCount();
+        
+        // Report the size of the snapshot
+        String strMsg = "Wrote snapshot of %d records from file %s to %s";
+        Task.getTask().out.println( String.format(strMsg, rows, this.esds.getName(), path) );
+        return rows;
+    }
 }
@@ -0,0 +1,467 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.esds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.cics.server.CICSExecutorService;
+import com.ibm.cics.server.InvalidRequestException;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.bean.StockPart;
+
+/**
+ * Example of appending records to a VSAM ESDS file using group commit.
+ *
+ * Records passed to {@link #append(StockPart)} are queued, and written by a
+ * single CICS task started using
+ * {@link CICSExecutorService#runAsCICS(java.util.concurrent.Callable)}. That
+ * task writes the queued records as a group, and takes one syncpoint for the
+ * whole group once it holds the maximum batch size, or once the maximum delay
+ * has passed since the first record in the group was queued. Many appends
+ * therefore share the cost of a single syncpoint, and no caller holds the
+ * file resources while waiting for others.
+ *
+ * Each caller receives a future which completes with the RBA of its record
+ * once the group containing it has been committed. If any write in the group
+ * fails, the whole group is backed out and every future in it completes
+ * exceptionally. Because the records are written in a separate unit of work,
+ * they are committed independently of the task which appended them.
+ *
+ * If an {@link EsdsRbaIndex} is passed to the constructor, the writing task
+ * adds each record to the index as it is written, in the same unit of work,
+ * so records appended here can be found by
+ * {@link EsdsExampleCommon#readByPartId(int)} once they are committed.
+ *
+ * The writing task remains active, waiting for records, until
+ * {@link #close()} is called. If the writing task itself fails, for example
+ * because a group cannot be backed out, every record still queued and every
+ * record appended afterwards completes exceptionally with the same cause.
+ * All methods are safe to call from concurrent tasks.
+ */
+public class EsdsGroupAppender implements AutoCloseable
+{
+    /**
+     * Default maximum number of records in a group.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Default maximum time a record waits for its group to fill, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 50;
+
+    /**
+     * Placed on the queue to tell the writing task to finish.
+     */
+    private static final Pending END = new Pending(null);
+
+    /**
+     * Maximum number of records in a group.
+     */
+    private final int batchSize;
+
+    /**
+     * Maximum time a record waits for its group to fill, in nanoseconds.
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * Index updated by the writing task, or <code>null</code>.
+     */
+    private final EsdsRbaIndex index;
+
+    /**
+     * Records waiting to be written.
+     */
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The writing task, or <code>null</code> until the first append.
+     */
+    private Future<?> writer;
+
+    /**
+     * True once the appender has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * The reason the writing task ended early, or <code>null</code> if it
+     * has not failed.
+     */
+    private Throwable failure;
+
+    /*
+     * Statistics for the groups committed so far.
+     */
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong failedGroups = new AtomicLong();
+    private final AtomicLong maxGroupSize = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    /**
+     * Creates an appender using the default batch size and delay.
+     */
+    public EsdsGroupAppender()
+    {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates an appender which commits once either limit is reached.
+     *
+     * @param batchSize the maximum number of records in a group.
+     * @param maxDelayMillis the maximum time in milliseconds that a record
+     * waits for its group to fill before the group is committed.
+     */
+    public EsdsGroupAppender(int batchSize, long maxDelayMillis)
+    {
+        this(batchSize, maxDelayMillis, null);
+    }
+
+    /**
+     * Creates an appender which commits once either limit is reached, and
+     * maintains the supplied part ID index.
+     *
+     * @param batchSize the maximum number of records in a group.
+     * @param maxDelayMillis the maximum time in milliseconds that a record
+     * waits for its group to fill before the group is committed.
+     * @param index the index to update as each record is written, or
+     * <code>null</code> if no index is to be maintained.
+     */
+    public EsdsGroupAppender(int batchSize, long maxDelayMillis, EsdsRbaIndex index)
+    {
+        // Validate the limits
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        if ( maxDelayMillis < 0 ) {
+            throw new IllegalArgumentException("Maximum delay must not be negative");
+        }
+
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.index = index;
+    }
+
+    /**
+     * Queues a record to be written to the ESDS file. The record is copied,
+     * so the caller may reuse the supplied instance.
+     *
+     * @param sp the {@link StockPart} instance to write to the file.
+     *
+     * @return a future which completes with the RBA of the new record once
+     * it has been committed, or which has already failed if the writing
+     * task has ended early.
+     *
+     * @throws IllegalStateException if the appender has been closed.
+     */
+    public synchronized CompletableFuture<Long> append(StockPart sp)
+    {
+        if ( this.closed ) {
+            throw new IllegalStateException("Appender has been closed");
+        }
+
+        // Nothing will take the record if the writing task has failed
+        if ( this.failure != null ) {
+            CompletableFuture<Long> failed = new CompletableFuture<>();
+            failed.completeExceptionally(this.failure);
+            return failed;
+        }
+
+        // Start the writing task on first use
+        if ( this.writer == null ) {
+            this.writer = CICSExecutorService.runAsCICS( () -> { run(); return null; } );
+        }
+
+        Pending p = new Pending( new StockPart( sp.getByteBuffer().clone() ) );
+        this.queue.add(p);
+        return p.future;
+    }
+
+    /**
+     * Commits any records still queued, then ends the writing task and
+     * waits for it to finish. Calling this method more than once has no
+     * further effect.
+     */
+    @Override
+    public void close()
+    {
+        Future<?> f;
+
+        synchronized ( this ) {
+            if ( this.closed ) {
+                return;
+            }
+            this.closed = true;
+
+            // Queued after every record already appended
+            this.queue.add(END);
+            f = this.writer;
+        }
+
+        // Nothing to wait for if no records were ever appended
+        if ( f == null ) {
+            return;
+        }
+
+        try {
+            f.get();
+
+            // The writing task may have ended early without throwing
+            synchronized ( this ) {
+                if ( this.failure != null ) {
+                    throw new RuntimeException(this.failure);
+                }
+            }
+        }
+        catch (ExecutionException ee) {
+            // The writing task failed - propagate the cause back to caller
+            throw new RuntimeException(ee.getCause());
+        }
+        catch (InterruptedException ie) {
+            // Restore the interrupt and give up
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        }
+    }
+
+    /**
+     * Main loop of the writing task. Collects records into groups and
+     * commits each group, until the appender is closed.
+     */
+    private void run()
+    {
+        // This task's own instance of the file, keeping any index up to date
+        EsdsExampleCommon ex = new EsdsExampleCommon(this.index);
+        List<Pending> group = new ArrayList<>(this.batchSize);
+        boolean ending = false;
+
+        try {
+            while ( !ending ) {
+
+                // Wait for the first record of the next group
+                Pending p = this.queue.take();
+                if ( p == END ) {
+                    break;
+                }
+                group.add(p);
+
+                // Collect further records until the group is full or the delay expires,
+                // timed from when the first record was queued rather than taken
+                long deadline = p.queued + this.maxDelayNanos;
+                while ( group.size() < this.batchSize ) {
+
+                    long wait = deadline - System.nanoTime();
+                    p = wait > 0 ? this.queue.poll(wait, TimeUnit.NANOSECONDS) : this.queue.poll();
+                    if ( p == null ) {
+                        break;
+                    }
+                    if ( p == END ) {
+                        ending = true;
+                        break;
+                    }
+                    group.add(p);
+                }
+
+                commit(ex, group);
+                group.clear();
+            }
+        }
+        catch (InterruptedException ie) {
+            // Fail anything not yet committed
+            fail(group, ie);
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException re) {
+            // Fail anything not yet committed, then end the writing task
+            fail(group, re);
+            throw re;
+        }
+    }
+
+    /**
+     * Marks the appender as failed, so that later appends fail at once, then
+     * fails every record which has been appended but not committed.
+     */
+    private void fail(List<Pending> group, Throwable cause)
+    {
+        // Stop further records being queued
+        synchronized ( this ) {
+            this.failure = cause;
+        }
+
+        // Nothing can be added to the queue now, so this empties it for good
+        this.queue.drainTo(group);
+        for ( Pending p : group ) {
+            if ( p != END ) {
+                p.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Writes a single group of records and commits them.
+     */
+    private void commit(EsdsExampleCommon ex, List<Pending> group)
+    {
+        long start = System.nanoTime();
+        long[] rbas = new long[group.size()];
+
+        try {
+            // Write every record in the group, then take a single syncpoint
+            for ( int i = 0; i < rbas.length; i++ ) {
+                rbas[i] = ex.addRecord( group.get(i).part );
+            }
+            ex.commitUnitOfWork();
+        }
+        catch (RuntimeException re) {
+
+            this.failedGroups.incrementAndGet();
+            String strMsg = "Group of %d records backed out: %s";
+            Task.getTask().out.println( String.format(strMsg, rbas.length, re.getCause()) );
+
+            try {
+                // Back out any records written for this group
+                rollback();
+            }
+            finally {
+                // Release every caller in the group, even if the rollback failed
+                for ( Pending p : group ) {
+                    p.future.completeExceptionally(re);
+                }
+            }
+            return;
+        }
+
+        // Record the statistics for this group
+        long elapsed = System.nanoTime() - start;
+        this.groups.incrementAndGet();
+        this.records.addAndGet(rbas.length);
+        this.maxGroupSize.accumulateAndGet(rbas.length, Math::max);
+        this.totalCommitNanos.addAndGet(elapsed);
+        this.maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+
+        // Release every caller in the group
+        for ( int i = 0; i < rbas.length; i++ ) {
+            group.get(i).future.complete(rbas[i]);
+        }
+    }
+
+    /**
+     * Rolls back the current unit of work of the writing task.
+     */
+    private static void rollback()
+    {
+        try {
+            Task.getTask().rollback();
+        }
+        catch (InvalidRequestException ire) {
+            // Unable to roll back - propagate the error out of the writing task
+            throw new RuntimeException(ire);
+        }
+    }
+
+    /**
+     * @return the number of groups committed.
+     */
+    public long getGroupCount()
+    {
+        return this.groups.get();
+    }
+
+    /**
+     * @return the number of records committed.
+     */
+    public long getRecordCount()
+    {
+        return this.records.get();
+    }
+
+    /**
+     * @return the number of groups backed out because a write failed.
+     */
+    public long getFailedGroupCount()
+    {
+        return this.failedGroups.get();
+    }
+
+    /**
+     * @return the mean number of records in a committed group,
+     * or 0 if nothing has been committed.
+     */
+    public double getMeanGroupSize()
+    {
+        long n = this.groups.get();
+        return n == 0 ? 0.0d : (double) this.records.get() / n;
+    }
+
+    /**
+     * @return the largest number of records committed in a single group.
+     */
+    public long getMaxGroupSize()
+    {
+        return this.maxGroupSize.get();
+    }
+
+    /**
+     * @return the mean time taken to write and commit a group,
+     * in nanoseconds, or 0 if nothing has been committed.
+     */
+    public long getMeanCommitNanos()
+    {
+        long n = this.groups.get();
+        return n == 0 ? 0 : this.totalCommitNanos.get() / n;
+    }
+
+    /**
+     * @return the longest time taken to write and commit a group, in nanoseconds.
+     */
+    public long getMaxCommitNanos()
+    {
+        return this.maxCommitNanos.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        String strFmt = "groups=%d, records=%d, failed=%d, mean size=%.1f, max size=%d, "
+                + "mean commit=%d us, max commit=%d us";
+        return String.format(strFmt, getGroupCount(), getRecordCount(), getFailedGroupCount(),
+                getMeanGroupSize(), getMaxGroupSize(), getMeanCommitNanos() / 1_000, getMaxCommitNanos() / 1_000);
+    }
+
+    /**
+     * A record waiting to be written, and the future to complete once
+     * it has been committed.
+     */
+    private static final class Pending
+    {
+        private final StockPart part;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private final long queued = System.nanoTime();
+
+        private Pending(StockPart part)
+        {
+            this.part = part;
+        }
+    }
+}
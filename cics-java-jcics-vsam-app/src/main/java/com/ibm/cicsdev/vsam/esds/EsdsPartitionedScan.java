@@ -0,0 +1,260 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.esds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+import com.ibm.cics.server.CICSExecutorService;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.vsam.StockPartView;
+
+/**
+ * Example of scanning a whole VSAM ESDS file using several concurrent browses.
+ *
+ * A browse of an ESDS file can only start at the RBA of a record, and RBAs
+ * are not evenly spaced, so the file cannot simply be divided by address.
+ * Instead, the split points are taken from the part ID index maintained by
+ * {@link EsdsRbaIndex}, choosing RBAs which divide the indexed records into
+ * ranges of roughly equal size. Each split point is checked by starting a
+ * browse there, and discarded if no record starts at that RBA.
+ *
+ * The ranges are contiguous, and the first starts at RBA 0 while the last
+ * continues to the end of the file, so every record is scanned whether or
+ * not it has been indexed. The index only affects how evenly the work is
+ * divided. Each range is browsed in its own CICS task using
+ * {@link CICSExecutorService#runAsCICS(java.util.concurrent.Callable)}, and
+ * folds its records into a separate accumulator. Returning the accumulators
+ * in range order gives an ordered merge of the results, in the order in
+ * which the records were appended.
+ *
+ * {@link #scanSequential(Supplier, BiConsumer)} performs the same work as a
+ * single browse in the calling task, to provide a baseline for comparison.
+ * Both methods write their elapsed time to the task output.
+ */
+public class EsdsPartitionedScan
+{
+    /**
+     * Number of ranges to browse concurrently.
+     */
+    private final int partitions;
+
+    /**
+     * Index used to choose the split points.
+     */
+    private final EsdsRbaIndex index;
+
+    /**
+     * Creates a scan which divides the file into the supplied number of ranges.
+     *
+     * @param partitions the number of ranges to browse concurrently.
+     * @param index the index from which to choose split points, which should
+     * have been loaded. If the index holds too few records, fewer ranges
+     * are used.
+     */
+    public EsdsPartitionedScan(int partitions, EsdsRbaIndex index)
+    {
+        if ( partitions < 1 ) {
+            throw new IllegalArgumentException("Partition count must be at least 1");
+        }
+
+        this.partitions = partitions;
+        this.index = index;
+    }
+
+    /**
+     * Scans the file concurrently, returning one accumulator per range.
+     *
+     * @param <A> the type of the accumulator.
+     * @param supplier creates an empty accumulator for each range.
+     * @param accumulator folds a record into an accumulator. The view is
+     * reused, so values must be copied if they are to be kept.
+     *
+     * @return the accumulator for each range, in ascending RBA order.
+     */
+    public <A> List<A> scan(Supplier<A> supplier, BiConsumer<A, ? super StockPartView> accumulator)
+    {
+        // Work out which RBA ranges to browse
+        List<long[]> ranges = ranges();
+
+        long start = System.nanoTime();
+
+        // Start a CICS task to browse each range
+        List<Future<Partition<A>>> futures = new ArrayList<>(ranges.size());
+        for ( long[] range : ranges ) {
+            futures.add( CICSExecutorService.runAsCICS( () -> browse(range[0], range[1], supplier, accumulator) ) );
+        }
+
+        // Wait for each task in turn, keeping the results in RBA order
+        List<A> results = new ArrayList<>(futures.size());
+        long records = 0;
+        for ( Future<Partition<A>> future : futures ) {
+
+            Partition<A> p = waitFor(future);
+            results.add(p.result);
+            records += p.records;
+
+            // Report the throughput of this range
+            String strMsg = "Range from RBA 0x%016X: %d records in %d ms";
+            Task.getTask().out.println( String.format(strMsg, p.from, p.records, p.elapsed / 1_000_000) );
+        }
+
+        // Report the overall throughput
+        report("Partitioned", ranges.size(), records, System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * Scans the file concurrently, combining the accumulators for each range
+     * into a single result.
+     *
+     * @param <A> the type of the accumulator.
+     * @param supplier creates an empty accumulator for each range.
+     * @param accumulator folds a record into an accumulator.
+     * @param combiner combines two accumulators, the second of which holds
+     * the later records.
+     *
+     * @return the combined result.
+     */
+    public <A> A scan(Supplier<A> supplier, BiConsumer<A, ? super StockPartView> accumulator,
+            BinaryOperator<A> combiner)
+    {
+        // Combine the results in RBA order
+        A combined = supplier.get();
+        for ( A result : scan(supplier, accumulator) ) {
+            combined = combiner.apply(combined, result);
+        }
+        return combined;
+    }
+
+    /**
+     * Scans the whole file as a single browse in the calling task. This
+     * provides a baseline against which to measure the partitioned scan.
+     *
+     * @param <A> the type of the accumulator.
+     * @param supplier creates the accumulator.
+     * @param accumulator folds a record into the accumulator.
+     *
+     * @return the accumulator.
+     */
+    public <A> A scanSequential(Supplier<A> supplier, BiConsumer<A, ? super StockPartView> accumulator)
+    {
+        long start = System.nanoTime();
+
+        // Browse the whole file
+        Partition<A> p = browse(0, Long.MAX_VALUE, supplier, accumulator);
+
+        report("Sequential", 1, p.records, System.nanoTime() - start);
+        return p.result;
+    }
+
+    /**
+     * Divides the file into ranges at the split points chosen from the index.
+     *
+     * @return a list of [from, to) RBA ranges, in RBA order.
+     */
+    private List<long[]> ranges()
+    {
+        List<long[]> ranges = new ArrayList<>(this.partitions);
+        EsdsExampleCommon ex = new EsdsExampleCommon();
+
+        // Each range ends where the next one starts
+        long from = 0;
+        long[] found = new long[1];
+        for ( long split : this.index.splitPoints(this.partitions) ) {
+
+            // Only split at an RBA where a record actually starts
+            found[0] = -1;
+            ex.browse(split, 1, (view, rba) -> found[0] = rba);
+            if ( found[0] != split ) {
+                continue;
+            }
+
+            ranges.add(new long[] { from, split });
+            from = split;
+        }
+
+        // The last range continues to the end of the file
+        ranges.add(new long[] { from, Long.MAX_VALUE });
+        return ranges;
+    }
+
+    /**
+     * Browses a single range of RBAs. Runs in its own CICS task when called
+     * from {@link #scan(Supplier, BiConsumer)}.
+     */
+    private static <A> Partition<A> browse(long from, long to, Supplier<A> supplier,
+            BiConsumer<A, ? super StockPartView> accumulator)
+    {
+        long start = System.nanoTime();
+
+        // Each task needs its own file instance
+        EsdsExampleCommon ex = new EsdsExampleCommon();
+        A result = supplier.get();
+        int records = ex.browseRange(from, to, (view, rba) -> accumulator.accept(result, view));
+
+        return new Partition<>(from, result, records, System.nanoTime() - start);
+    }
+
+    /**
+     * Waits for a child task to complete, propagating any failure.
+     */
+    private static <T> T waitFor(Future<T> future)
+    {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ee) {
+            // The child task failed - propagate the cause back to caller
+            throw new RuntimeException(ee.getCause());
+        }
+        catch (InterruptedException ie) {
+            // Restore the interrupt and give up
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        }
+    }
+
+    /**
+     * Writes the throughput of a scan to the task output.
+     */
+    private static void report(String type, int ranges, long records, long elapsed)
+    {
+        double rate = elapsed > 0 ? records * 1_000_000_000.0d / elapsed : 0.0d;
+
+        String strMsg = "%s scan of %d range(s): %d records in %d ms (%.0f records/sec)";
+        Task.getTask().out.println( String.format(strMsg, type, ranges, records, elapsed / 1_000_000, rate) );
+    }
+
+    /**
+     * The outcome of browsing a single range.
+     */
+    private static final class Partition<A>
+    {
+        private final long from;
+        private final A result;
+        private final int records;
+        private final long elapsed;
+
+        private Partition(long from, A result, int records, long elapsed)
+        {
+            this.from = from;
+            this.result = result;
+            this.records = records;
+            this.elapsed = elapsed;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.esds;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.DuplicateRecordException;
+import com.ibm.cics.server.EndOfFileException;
+import com.ibm.cics.server.InvalidRequestException;
+import com.ibm.cics.server.KSDS;
+import com.ibm.cics.server.KeyHolder;
+import com.ibm.cics.server.KeyedFileBrowse;
+import com.ibm.cics.server.RecordHolder;
+import com.ibm.cics.server.RecordNotFoundException;
+import com.ibm.cics.server.SearchType;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.vsam.StockPartKey;
+
+/**
+ * An index from part ID to the RBA of the record in the VSAM ESDS file,
+ * held in memory and persisted to a companion KSDS file.
+ *
+ * Each record in the index file is 16 bytes long, holding the part ID as an
+ * 8-digit zoned decimal key, followed by the RBA as an 8-byte binary number.
+ * The in-memory copy is an open-addressing hash table of primitive part IDs
+ * and RBAs with linear probing, so a lookup allocates nothing and, once the
+ * index has been loaded, needs no file I/O at all.
+ *
+ * The index is maintained by {@link EsdsExampleCommon} and by
+ * {@link EsdsGroupAppender} when an instance is passed to their
+ * constructors. Records written by any other means are not indexed until
+ * {@link #build(int)} is run. The index file is updated by the same task as
+ * the ESDS file, so the two are committed or backed out together, provided
+ * both are defined as recoverable. Like the other in-memory structures in
+ * these samples, the in-memory table is not part of the unit of work, so
+ * {@link EsdsExampleCommon#readByPartId(int)} checks the part ID of every
+ * record it reads. An instance is intended to be held in a static field,
+ * and all methods are safe to call from concurrent tasks.
+ */
+public class EsdsRbaIndex
+{
+    /**
+     * Name of the file resource to use.
+     */
+    private static final String FILE_NAME = "XMPLEIDX";
+
+    /**
+     * Length of an index record.
+     */
+    public static final int RECORD_LENGTH = StockPartKey.LENGTH + 8;
+
+    /**
+     * Marks an unused slot in the table. No part ID is negative.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * Returned for a part ID which is not in the index.
+     */
+    public static final long NO_RBA = -1;
+
+    /**
+     * A field to hold a reference to the index file.
+     */
+    private final KSDS ksds;
+
+    /**
+     * Part ID held in each slot, or {@link #EMPTY}.
+     */
+    private int[] keys;
+
+    /**
+     * RBA held in each slot.
+     */
+    private long[] rbas;
+
+    /**
+     * Number of slots in use.
+     */
+    private int size;
+
+    /**
+     * Allows concurrent lookups, but only one update at a time.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor to initialise the reference to the index file, and
+     * create an empty table.
+     */
+    public EsdsRbaIndex()
+    {
+        // Create a new KSDS instance and initialise
+        this.ksds = new KSDS();
+        this.ksds.setName(FILE_NAME);
+
+        this.keys = newKeys(1024);
+        this.rbas = new long[1024];
+    }
+
+    /**
+     * Records the RBA of a part, in both the index file and the table.
+     * An existing entry for the part is replaced.
+     *
+     * @param partId the part ID.
+     * @param rba the RBA of the record in the ESDS file.
+     */
+    public void put(int partId, long rba)
+    {
+        byte[] record = toRecord(partId, rba);
+
+        try {
+            try {
+                // Write the entry, assuming it is new
+                this.ksds.write( Arrays.copyOf(record, StockPartKey.LENGTH), record );
+            }
+            catch (DuplicateRecordException dre) {
+
+                // Already indexed - replace the RBA
+                RecordHolder rh = new RecordHolder();
+                this.ksds.readForUpdate( Arrays.copyOf(record, StockPartKey.LENGTH), SearchType.EQUAL, rh );
+                this.ksds.rewrite(record);
+            }
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for WRITE to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not addable or updateable
+                String strMsg = "Add or update operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+
+        putInMemory(partId, rba);
+    }
+
+    /**
+     * Finds the RBA of a part. The table is searched first, and the index
+     * file is read only if the part is not in the table.
+     *
+     * @param partId the part ID to find.
+     *
+     * @return the RBA of the record, or {@link #NO_RBA} if the part
+     * is not in the index.
+     */
+    public long get(int partId)
+    {
+        // Look in the table first
+        long rba = getFromMemory(partId);
+        if ( rba != NO_RBA ) {
+            return rba;
+        }
+
+        try {
+            // Holder object to receive the data
+            RecordHolder rh = new RecordHolder();
+
+            // Read the entry from the index file
+            this.ksds.read(StockPartKey.toKey(partId), SearchType.EQUAL, rh);
+            rba = rbaOf( rh.getValue() );
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Not indexed
+            return NO_RBA;
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+
+        // Keep the entry for subsequent lookups
+        putInMemory(partId, rba);
+        return rba;
+    }
+
+    /**
+     * Removes a part from the table, so that the next lookup reads the
+     * index file. Used when the table is found to be out of step with
+     * the files.
+     *
+     * @param partId the part ID to forget.
+     */
+    public void forget(int partId)
+    {
+        this.lock.writeLock().lock();
+        try {
+            int slot = find(this.keys, partId);
+            if ( this.keys[slot] == EMPTY ) {
+                return;
+            }
+
+            // Remove the entry, then reinsert the rest of its cluster
+            // so that linear probing still finds every entry
+            this.keys[slot] = EMPTY;
+            this.size--;
+
+            int mask = this.keys.length - 1;
+            for ( int i = (slot + 1) & mask; this.keys[i] != EMPTY; i = (i + 1) & mask ) {
+                int key = this.keys[i];
+                long rba = this.rbas[i];
+                this.keys[i] = EMPTY;
+                int to = find(this.keys, key);
+                this.keys[to] = key;
+                this.rbas[to] = rba;
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the contents of the table with every entry in the index file,
+     * so that subsequent lookups need no index file I/O.
+     *
+     * @return the number of entries loaded.
+     */
+    public int load()
+    {
+        // Read the whole index file into new arrays
+        int[] newKeys = newKeys(1024);
+        long[] newRbas = new long[1024];
+        int loaded = 0;
+
+        // Holder objects to receive the data
+        RecordHolder rh = new RecordHolder();
+        KeyHolder kh = new KeyHolder();
+
+        try {
+            // Start a browse at the lowest possible key
+            KeyedFileBrowse kfb = this.ksds.startBrowse(StockPartKey.keyZero(), SearchType.GTEQ);
+
+            try {
+                while ( true ) {
+
+                    // Read an entry from the index
+                    kfb.next(rh, kh);
+                    byte[] record = rh.getValue();
+
+                    // Keep the table no more than half full
+                    if ( 2 * (loaded + 1) > newKeys.length ) {
+                        int[] oldKeys = newKeys;
+                        long[] oldRbas = newRbas;
+                        newKeys = newKeys(oldKeys.length * 2);
+                        newRbas = new long[oldKeys.length * 2];
+                        rehash(oldKeys, oldRbas, newKeys, newRbas);
+                    }
+
+                    int partId = StockPartKey.decode(record);
+                    int slot = find(newKeys, partId);
+                    if ( newKeys[slot] == EMPTY ) {
+                        loaded++;
+                    }
+                    newKeys[slot] = partId;
+                    newRbas[slot] = rbaOf(record);
+                }
+            }
+            catch (EndOfFileException eof) {
+                // Normal termination of loop - no further entries
+            }
+            finally {
+                kfb.end();
+            }
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Empty index file
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+
+        // Swap in the new table
+        this.lock.writeLock().lock();
+        try {
+            this.keys = newKeys;
+            this.rbas = newRbas;
+            this.size = loaded;
+            return loaded;
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an entry to the index for every record in the ESDS file,
+     * committing after every batch of records. This populates the index
+     * for a file which was loaded before the index existed.
+     *
+     * @param batchSize the number of entries to write between each syncpoint.
+     *
+     * @return the number of records indexed.
+     */
+    public int build(int batchSize)
+    {
+        // Validate the batch size
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+
+        // Browse the ESDS file without maintaining the index
+        EsdsExampleCommon ex = new EsdsExampleCommon();
+
+        // Part ID and RBA of each record in the current batch
+        int[] partIds = new int[batchSize + 1];
+        long[] rbas = new long[batchSize + 1];
+        int[] found = new int[1];
+
+        int indexed = 0;
+        long rbaNext = 0;
+        boolean first = true;
+
+        while ( true ) {
+
+            // Read the next batch, ending the browse before updating the index.
+            // After the first batch, the browse starts at the last record
+            // already indexed, which is read again and skipped.
+            found[0] = 0;
+            int skip = first ? 0 : 1;
+            ex.browse(rbaNext, batchSize + skip, (view, rba) -> {
+                partIds[found[0]] = view.getPartId();
+                rbas[found[0]++] = rba;
+            });
+
+            // Index the batch and commit
+            for ( int i = skip; i < found[0]; i++ ) {
+                put(partIds[i], rbas[i]);
+            }
+            ex.commitUnitOfWork();
+            indexed += Math.max(0, found[0] - skip);
+
+            // Stop once a batch comes back short
+            if ( found[0] < batchSize + skip ) {
+                break;
+            }
+            rbaNext = rbas[found[0] - 1];
+            first = false;
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Chooses RBAs which divide the records in the table into ranges of
+     * roughly equal numbers of records, for {@link EsdsPartitionedScan}.
+     *
+     * @param ranges the number of ranges required.
+     *
+     * @return the RBA at which each range after the first starts, in
+     * ascending order. Fewer split points are returned if the table
+     * holds too few records.
+     */
+    public long[] splitPoints(int ranges)
+    {
+        // Take a copy of every RBA in the table
+        long[] all;
+        this.lock.readLock().lock();
+        try {
+            all = new long[this.size];
+            int n = 0;
+            for ( int i = 0; i < this.keys.length; i++ ) {
+                if ( this.keys[i] != EMPTY ) {
+                    all[n++] = this.rbas[i];
+                }
+            }
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+
+        // Pick evenly spaced RBAs in file order, skipping duplicates
+        Arrays.sort(all);
+        long[] splits = new long[Math.max(0, ranges - 1)];
+        int found = 0;
+        for ( int i = 1; i < ranges && all.length > 0; i++ ) {
+            long rba = all[(int) ((long) all.length * i / ranges)];
+            if ( rba > 0 && (found == 0 || rba > splits[found - 1]) ) {
+                splits[found++] = rba;
+            }
+        }
+
+        return Arrays.copyOf(splits, found);
+    }
+
+    /**
+     * @return the number of entries in the table.
+     */
+    public int size()
+    {
+        this.lock.readLock().lock();
+        try {
+            return this.size;
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up a part in the table only.
+     */
+    private long getFromMemory(int partId)
+    {
+        this.lock.readLock().lock();
+        try {
+            int slot = find(this.keys, partId);
+            return this.keys[slot] == EMPTY ? NO_RBA : this.rbas[slot];
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces an entry in the table only.
+     */
+    private void putInMemory(int partId, long rba)
+    {
+        this.lock.writeLock().lock();
+        try {
+            // Keep the table no more than half full
+            if ( 2 * (this.size + 1) > this.keys.length ) {
+                int[] newKeys = newKeys(this.keys.length * 2);
+                long[] newRbas = new long[this.keys.length * 2];
+                rehash(this.keys, this.rbas, newKeys, newRbas);
+                this.keys = newKeys;
+                this.rbas = newRbas;
+            }
+
+            int slot = find(this.keys, partId);
+            if ( this.keys[slot] == EMPTY ) {
+                this.keys[slot] = partId;
+                this.size++;
+            }
+            this.rbas[slot] = rba;
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the slot holding a part ID, or the empty slot where it
+     * would be inserted.
+     */
+    private static int find(int[] keys, int partId)
+    {
+        int mask = keys.length - 1;
+        int slot = mix(partId) & mask;
+
+        // Linear probing - the table is never full, so this terminates
+        while ( keys[slot] != EMPTY && keys[slot] != partId ) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Copies every entry from one table into a larger, empty one.
+     */
+    private static void rehash(int[] oldKeys, long[] oldRbas, int[] newKeys, long[] newRbas)
+    {
+        for ( int i = 0; i < oldKeys.length; i++ ) {
+            if ( oldKeys[i] != EMPTY ) {
+                int slot = find(newKeys, oldKeys[i]);
+                newKeys[slot] = oldKeys[i];
+                newRbas[slot] = oldRbas[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a part ID, since sequential part IDs would
+     * otherwise fill adjacent slots and form long probe sequences.
+     */
+    private static int mix(int partId)
+    {
+        int h = partId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Creates an array of keys with every slot empty. The length
+     * must be a power of two.
+     */
+    private static int[] newKeys(int length)
+    {
+        int[] keys = new int[length];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    /**
+     * Builds an index record.
+     */
+    private static byte[] toRecord(int partId, long rba)
+    {
+        ByteBuffer bb = ByteBuffer.allocate(RECORD_LENGTH);
+        StockPartKey.encode(partId, bb);
+        bb.putLong(rba);
+        return bb.array();
+    }
+
+    /**
+     * Extracts the RBA from an index record.
+     */
+    private static long rbaOf(byte[] record)
+    {
+        return ByteBuffer.wrap(record).getLong(StockPartKey.LENGTH);
+    }
+}
@@ -0,0 +1,254 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.esds;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.InvalidQueueIdException;
+import com.ibm.cics.server.ItemErrorException;
+import com.ibm.cics.server.ItemHolder;
+import com.ibm.cics.server.TSQ;
+import com.ibm.cics.server.TSQType;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.bean.StockPart;
+
+/**
+ * Example of following the end of a VSAM ESDS file, processing only the
+ * records appended since the previous run.
+ *
+ * The RBA of the last record processed is held as a checkpoint in the first
+ * item of a temporary storage queue, one queue per consumer. Each call to
+ * {@link #follow(int, Consumer)} starts a browse at the checkpointed RBA,
+ * skips the record already processed, and passes the new records to the
+ * consumer in batches. Records in an ESDS file are never moved or deleted,
+ * so the checkpoint always identifies the same record. The work done by a run
+ * is therefore proportional to the number of new records, not the size of
+ * the file.
+ *
+ * After every few batches the checkpoint is updated and the unit of work is
+ * committed. If the queue is defined as recoverable, using a TSMODEL with
+ * RECOVERY(YES), the checkpoint is committed or backed out together with any
+ * recoverable changes made by the consumer, so each record is processed
+ * exactly once. Otherwise a record may be processed again after a failure.
+ */
+public class EsdsTailReader
+{
+    /**
+     * Default number of records passed to the consumer at a time.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Default number of batches processed between checkpoints.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10;
+
+    /**
+     * Returned when no checkpoint has been taken.
+     */
+    public static final long NO_CHECKPOINT = -1;
+
+    /**
+     * The queue holding the checkpoint.
+     */
+    private final TSQ tsq;
+
+    /**
+     * Number of records passed to the consumer at a time.
+     */
+    private final int batchSize;
+
+    /**
+     * Number of batches processed between checkpoints.
+     */
+    private final int checkpointInterval;
+
+    /**
+     * Creates a reader using the default batch size and checkpoint interval.
+     *
+     * @param queueName the name of the TSQ holding the checkpoint, which
+     * should be different for each consumer.
+     */
+    public EsdsTailReader(String queueName)
+    {
+        this(queueName, DEFAULT_BATCH_SIZE, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Creates a reader.
+     *
+     * @param queueName the name of the TSQ holding the checkpoint, which
+     * should be different for each consumer.
+     * @param batchSize the number of records passed to the consumer at a time.
+     * @param checkpointInterval the number of batches processed between
+     * checkpoints.
+     */
+    public EsdsTailReader(String queueName, int batchSize, int checkpointInterval)
+    {
+        // Validate the sizes
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        if ( checkpointInterval < 1 ) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1");
+        }
+
+        // Create a reference to the TSQ holding the checkpoint
+        this.tsq = new TSQ();
+        this.tsq.setName(queueName);
+        this.tsq.setType(TSQType.AUXILIARY);
+
+        this.batchSize = batchSize;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Passes every record appended since the last checkpoint to the
+     * consumer, in batches, taking a checkpoint and committing after every
+     * few batches and at the end.
+     *
+     * @param maxRecords the maximum number of records to process in this run.
+     * @param consumer the callback to receive each batch of records, in
+     * the order in which they were appended. The list is reused for each
+     * batch, but the records in it are not.
+     *
+     * @return the number of records processed.
+     */
+    public int follow(int maxRecords, Consumer<? super List<StockPart>> consumer)
+    {
+        long start = System.nanoTime();
+
+        // Browse the ESDS file in this task
+        EsdsExampleCommon ex = new EsdsExampleCommon();
+
+        // Resume from the last record processed
+        long checkpoint = getCheckpoint();
+        long rbaNext = checkpoint == NO_CHECKPOINT ? 0 : checkpoint;
+
+        // Records and RBA of the current batch
+        List<StockPart> batch = new ArrayList<>(this.batchSize + 1);
+        long[] rbaLast = { NO_CHECKPOINT };
+
+        int processed = 0;
+        int batches = 0;
+
+        while ( processed < maxRecords ) {
+
+            // Read the next batch, ending the browse before the consumer runs.
+            // The browse starts at the last record processed, which is skipped.
+            int count = Math.min(this.batchSize, maxRecords - processed);
+            long skip = checkpoint;
+            batch.clear();
+            ex.browse(rbaNext, count + (skip == NO_CHECKPOINT ? 0 : 1), (view, rba) -> {
+                if ( rba != skip ) {
+                    batch.add( view.copy() );
+                    rbaLast[0] = rba;
+                }
+            });
+
+            // Nothing new
+            if ( batch.isEmpty() ) {
+                break;
+            }
+
+            consumer.accept(batch);
+            processed += batch.size();
+            batches++;
+
+            // Move past the batch just processed
+            checkpoint = rbaLast[0];
+            rbaNext = checkpoint;
+
+            // Checkpoint and commit periodically
+            if ( batches % this.checkpointInterval == 0 ) {
+                writeCheckpoint(checkpoint);
+                ex.commitUnitOfWork();
+            }
+
+            // Stop once a batch comes back short - we have reached the end
+            if ( batch.size() < count ) {
+                break;
+            }
+        }
+
+        // Checkpoint and commit any batches since the last checkpoint
+        if ( batches % this.checkpointInterval != 0 ) {
+            writeCheckpoint(checkpoint);
+            ex.commitUnitOfWork();
+        }
+
+        // Report the work done
+        long elapsed = System.nanoTime() - start;
+        String strMsg = "Processed %d new records in %d batches from queue %s, checkpoint RBA 0x%016X, in %d ms";
+        Task.getTask().out.println( String.format(strMsg, processed, batches, this.tsq.getName(),
+                checkpoint, elapsed / 1_000_000) );
+
+        return processed;
+    }
+
+    /**
+     * Reads the RBA of the last record processed.
+     *
+     * @return the checkpointed RBA, or {@link #NO_CHECKPOINT} if no
+     * checkpoint has been taken.
+     */
+    public long getCheckpoint()
+    {
+        // Holder to receive data from TSQ
+        ItemHolder holder = new ItemHolder();
+
+        try {
+            this.tsq.readItem(1, holder);
+        }
+        catch (InvalidQueueIdException qe) {
+            // QIDERR - queue does not exist yet
+            return NO_CHECKPOINT;
+        }
+        catch (ItemErrorException iee) {
+            // ITEMERR - queue exists but has no items
+            return NO_CHECKPOINT;
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+
+        return ByteBuffer.wrap( holder.getValue() ).getLong();
+    }
+
+    /**
+     * Stores the RBA of the last record processed. The unit of work
+     * is not committed.
+     *
+     * @param rba the RBA to store.
+     */
+    private void writeCheckpoint(long rba)
+    {
+        byte[] item = ByteBuffer.allocate(8).putLong(rba).array();
+
+        try {
+            if ( getCheckpoint() == NO_CHECKPOINT ) {
+                this.tsq.writeItem(item);
+            }
+            else {
+                this.tsq.rewriteItem(1, item);
+            }
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.EndOfFileException;
+import com.ibm.cics.server.InvalidRequestException;
+import com.ibm.cics.server.KSDS;
+import com.ibm.cics.server.KeyHolder;
+import com.ibm.cics.server.KeyedFileBrowse;
+import com.ibm.cics.server.RecordHolder;
+import com.ibm.cics.server.RecordNotFoundException;
+import com.ibm.cics.server.SearchType;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.bean.StockPart;
+
+/**
+ * Iterates over the records in a VSAM KSDS file, reading each record from
+ * the file only when it is requested.
+ *
+ * The browse is started when the first record is requested, and is ended
+ * either when the end of the file is reached or when {@link #close()} is
+ * called, whichever happens first. Callers that may stop iterating early
+ * should always close the iterator, for example by using a
+ * try-with-resources block.
+ *
+ * As with all JCICS file browses, an instance must only be used from the
+ * CICS task that created it.
+ */
+class KsdsBrowseIterator implements Iterator<StockPart>, AutoCloseable
+{
+    /**
+     * The file to browse.
+     */
+    private final KSDS ksds;
+
+    /**
+     * The key at which the browse should start.
+     */
+    private final byte[] keyStart;
+
+    /**
+     * Holder object to receive the data, reused for every record.
+     */
+    private final RecordHolder rh = new RecordHolder();
+
+    /**
+     * Holder object to receive the key, reused for every record.
+     */
+    private final KeyHolder kh = new KeyHolder();
+
+    /**
+     * The active browse, or <code>null</code> if the browse has not yet
+     * been started or has been ended.
+     */
+    private KeyedFileBrowse kfb;
+
+    /**
+     * The record read ahead by {@link #hasNext()}, but not yet returned.
+     */
+    private StockPart nextPart;
+
+    /**
+     * Set once there are no further records to return.
+     */
+    private boolean finished;
+
+    /**
+     * Creates an iterator that will browse the supplied file.
+     *
+     * @param ksds the file to browse.
+     * @param keyStart the key at which the browse should start.
+     */
+    KsdsBrowseIterator(KSDS ksds, byte[] keyStart)
+    {
+        this.ksds = ksds;
+        this.keyStart = keyStart;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        // Read the next record only if we do not already hold one
+        if ( this.nextPart == null && ! this.finished ) {
+            readNext();
+        }
+
+        return this.nextPart != null;
+    }
+
+    @Override
+    public StockPart next()
+    {
+        if ( ! hasNext() ) {
+            throw new NoSuchElementException();
+        }
+
+        // Hand over the record read ahead
+        StockPart sp = this.nextPart;
+        this.nextPart = null;
+        return sp;
+    }
+
+    /**
+     * Ends the browse if it is still active. Calling this method more than
+     * once has no further effect.
+     */
+    @Override
+    public void close()
+    {
+        // No further records will be returned
+        this.finished = true;
+        this.nextPart = null;
+
+        // Nothing to do if the browse was never started or has already ended
+        if ( this.kfb == null ) {
+            return;
+        }
+
+        try {
+            // End the browse, releasing the VSAM string
+            KeyedFileBrowse browse = this.kfb;
+            this.kfb = null;
+            browse.end();
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Reads the next record from the file, starting the browse if required.
+     */
+    private void readNext()
+    {
+        try {
+            // Start the browse of the file on the first request
+            if ( this.kfb == null ) {
+                this.kfb = this.ksds.startBrowse(this.keyStart, SearchType.GTEQ);
+            }
+
+            // Read a record from the file
+            this.kfb.next(this.rh, this.kh);
+
+            // Get the record and convert to a StockPart
+            this.nextPart = new StockPart( this.rh.getValue() );
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Initial browse failed - no records at or after the start key
+            close();
+        }
+        catch (EndOfFileException eof) {
+            // Normal termination - no further records
+            close();
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable or updateable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.nio.ByteBuffer;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.DataHolder;
+import com.ibm.cics.server.DuplicateRecordException;
+import com.ibm.cics.server.InvalidQueueIdException;
+import com.ibm.cics.server.ItemErrorException;
+import com.ibm.cics.server.ItemHolder;
+import com.ibm.cics.server.KSDS;
+import com.ibm.cics.server.QueueZeroException;
+import com.ibm.cics.server.RecordHolder;
+import com.ibm.cics.server.RecordNotFoundException;
+import com.ibm.cics.server.SearchType;
+import com.ibm.cics.server.TDQ;
+import com.ibm.cics.server.TSQ;
+import com.ibm.cics.server.TSQType;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.vsam.VsamExampleCommon;
+
+/**
+ * Applies the change events written by {@link KsdsChangeJournal} to a replica
+ * of the VSAM KSDS file, so that the replica can be kept up to date without
+ * comparing complete extracts of the file.
+ *
+ * Events are read from the queue in the order they were written, and applied
+ * to the replica file. The unit of work is committed after every batch, so
+ * with a recoverable queue and replica file, each event is removed from the
+ * queue in the same unit of work as it is applied.
+ *
+ * The sequence number of the last event applied is held as a checkpoint in
+ * the first item of a temporary storage queue named after the replica file,
+ * and is written in the same unit of work as the changes to the replica. The
+ * queue should be made recoverable using a TSMODEL with RECOVERY(YES). Any
+ * event with a sequence number no higher than the checkpoint has already been
+ * applied, and is counted as a duplicate instead of being applied again, so
+ * an event delivered again cannot undo a later change to the same record.
+ * This relies on {@link KsdsChangeJournal} writing events to the queue in
+ * sequence order. An update to a record which is missing from the replica
+ * cannot be applied, and is counted and reported instead.
+ */
+public class KsdsChangeApplier extends VsamExampleCommon
+{
+    /**
+     * Default name of the replica file.
+     */
+    public static final String DEFAULT_REPLICA_NAME = "XMPLKREP";
+
+    /**
+     * Suffix added to the replica file name to form the checkpoint queue name.
+     */
+    private static final String CHECKPOINT_SUFFIX = ".SEQ";
+
+    /**
+     * The queue to read events from.
+     */
+    private final TDQ tdq;
+
+    /**
+     * The replica file to update.
+     */
+    private final KSDS replica;
+
+    /**
+     * The queue holding the sequence number of the last event applied.
+     */
+    private final TSQ checkpoint;
+
+    /**
+     * Sequence number of the last event applied, or -1 if none.
+     */
+    private long lastSequence = -1;
+
+    /**
+     * Sequence number held in the checkpoint queue, or -1 if none.
+     */
+    private long checkpointSequence = -1;
+
+    /**
+     * Number of events applied.
+     */
+    private long applied;
+
+    /**
+     * Number of updates which could not be applied.
+     */
+    private long skipped;
+
+    /**
+     * Number of events which had already been applied.
+     */
+    private long duplicates;
+
+    /**
+     * Creates an applier for the default queue and replica file.
+     */
+    public KsdsChangeApplier()
+    {
+        this(KsdsChangeJournal.DEFAULT_QUEUE_NAME, DEFAULT_REPLICA_NAME);
+    }
+
+    /**
+     * Creates an applier for the specified queue and replica file.
+     *
+     * @param queueName the name of the TDQ to read events from.
+     * @param replicaName the name of the replica KSDS file.
+     */
+    public KsdsChangeApplier(String queueName, String replicaName)
+    {
+        this.tdq = new TDQ();
+        this.tdq.setName(queueName);
+
+        this.replica = new KSDS();
+        this.replica.setName(replicaName);
+
+        // Create a reference to the TSQ holding the checkpoint
+        this.checkpoint = new TSQ();
+        this.checkpoint.setName(replicaName + CHECKPOINT_SUFFIX);
+        this.checkpoint.setType(TSQType.AUXILIARY);
+    }
+
+    /**
+     * Reads and applies every event currently on the queue, committing
+     * after every <code>batchSize</code> events.
+     *
+     * @param batchSize the number of events to apply between each syncpoint.
+     *
+     * @return the number of events applied.
+     */
+    public int applyAvailable(int batchSize)
+    {
+        // Validate the batch size
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+
+        // Resume from the last event committed, in case an earlier unit of work was backed out
+        this.lastSequence = readCheckpoint();
+        this.checkpointSequence = this.lastSequence;
+
+        // Holder to receive data from the TDQ
+        DataHolder holder = new DataHolder();
+        int count = 0;
+
+        while ( true ) {
+
+            try {
+                // Read the next event (destructive read)
+                this.tdq.readData(holder);
+            }
+            catch (QueueZeroException qze) {
+                // QZERO - no more events for now
+                break;
+            }
+            catch (CicsConditionException cce) {
+                // Crude error handling - propagate an exception back to caller
+                throw new RuntimeException(cce);
+            }
+
+            apply( KsdsChangeEvent.fromBytes(holder.getValue()) );
+            count++;
+
+            // Commit once we have reached the end of a batch
+            if ( count % batchSize == 0 ) {
+                checkpoint();
+                commitUnitOfWork();
+            }
+        }
+
+        // Commit any partial batch remaining
+        if ( count % batchSize != 0 ) {
+            checkpoint();
+            commitUnitOfWork();
+        }
+
+        return count;
+    }
+
+    /**
+     * Applies a single event to the replica file, unless it has already
+     * been applied. The unit of work is not committed, and the checkpoint
+     * is not written until {@link #checkpoint()} is called.
+     *
+     * @param event the event to apply.
+     */
+    public void apply(KsdsChangeEvent event)
+    {
+        // Skip any event already applied, which would undo later changes
+        if ( event.getSequence() <= this.lastSequence ) {
+            this.duplicates++;
+            return;
+        }
+
+        byte[] key = event.getKey();
+        RecordHolder rh = new RecordHolder();
+
+        try {
+            switch ( event.getOp() ) {
+
+            case ADD:
+                try {
+                    this.replica.write( key, event.applyTo(null) );
+                }
+                catch (DuplicateRecordException dre) {
+                    // Already present, perhaps from an earlier attempt - replace it
+                    this.replica.readForUpdate(key, SearchType.EQUAL, rh);
+                    this.replica.rewrite( event.applyTo(null) );
+                }
+                break;
+
+            case UPDATE:
+                try {
+                    // Patch the changed ranges into the replica record
+                    this.replica.readForUpdate(key, SearchType.EQUAL, rh);
+                    this.replica.rewrite( event.applyTo(rh.getValue()) );
+                }
+                catch (RecordNotFoundException rnfe) {
+                    // Nothing to patch - the replica is missing this record
+                    String strMsg = "Could not apply %s: record not in replica %s";
+                    Task.getTask().out.println( String.format(strMsg, event, this.replica.getName()) );
+                    this.skipped++;
+                    return;
+                }
+                break;
+
+            case DELETE:
+                try {
+                    this.replica.delete(key);
+                }
+                catch (RecordNotFoundException rnfe) {
+                    // Already gone
+                }
+                break;
+            }
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+
+        this.lastSequence = event.getSequence();
+        this.applied++;
+    }
+
+    /**
+     * Writes the sequence number of the last event applied to the checkpoint
+     * queue, so that it is committed in the same unit of work as the changes
+     * to the replica. The unit of work is not committed.
+     */
+    public void checkpoint()
+    {
+        // Nothing applied since the checkpoint was last written
+        if ( this.lastSequence == this.checkpointSequence ) {
+            return;
+        }
+
+        byte[] item = ByteBuffer.allocate(8).putLong(this.lastSequence).array();
+
+        try {
+            if ( this.checkpointSequence < 0 ) {
+                this.checkpoint.writeItem(item);
+            }
+            else {
+                this.checkpoint.rewriteItem(1, item);
+            }
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+
+        this.checkpointSequence = this.lastSequence;
+    }
+
+    /**
+     * Reads the sequence number of the last event applied.
+     *
+     * @return the checkpointed sequence number, or -1 if no checkpoint
+     * has been written.
+     */
+    private long readCheckpoint()
+    {
+        // Holder to receive data from TSQ
+        ItemHolder holder = new ItemHolder();
+
+        try {
+            this.checkpoint.readItem(1, holder);
+        }
+        catch (InvalidQueueIdException qe) {
+            // QIDERR - queue does not exist yet
+            return -1;
+        }
+        catch (ItemErrorException iee) {
+            // ITEMERR - queue exists but has no items
+            return -1;
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+
+        return ByteBuffer.wrap( holder.getValue() ).getLong();
+    }
+
+    /**
+     * @return the sequence number of the last event applied,
+     * or -1 if no events have been applied.
+     */
+    public long getLastSequence()
+    {
+        return this.lastSequence;
+    }
+
+    /**
+     * @return the number of events applied.
+     */
+    public long getAppliedCount()
+    {
+        return this.applied;
+    }
+
+    /**
+     * @return the number of updates which could not be applied because
+     * the record was missing from the replica.
+     */
+    public long getSkippedCount()
+    {
+        return this.skipped;
+    }
+
+    /**
+     * @return the number of events which were not applied because they
+     * had already been applied.
+     */
+    public long getDuplicateCount()
+    {
+        return this.duplicates;
+    }
+}
@@ -0,0 +1,291 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.ibm.cicsdev.bean.StockPart;
+import com.ibm.cicsdev.vsam.StockPartKey;
+
+/**
+ * A single change to a record in the VSAM KSDS file, in the compact binary
+ * form written by {@link KsdsChangeJournal}.
+ *
+ * Every event starts with a one byte operation code, an 8-byte sequence
+ * number, and the 8-byte key of the record. The remainder depends on the
+ * operation:
+ *
+ * <ul>
+ * <li>{@link Op#ADD} - the complete 80-byte record as added</li>
+ * <li>{@link Op#UPDATE} - a one byte count of changed ranges, followed by
+ * each range as a one byte offset, a one byte length, and the new bytes</li>
+ * <li>{@link Op#DELETE} - nothing</li>
+ * </ul>
+ *
+ * An update which changes only a few fields is therefore much shorter than
+ * the record itself.
+ */
+public final class KsdsChangeEvent
+{
+    /**
+     * The type of change.
+     */
+    public enum Op
+    {
+        ADD('A'),
+        UPDATE('U'),
+        DELETE('D');
+
+        /**
+         * Byte used to represent this operation in an event.
+         */
+        private final byte code;
+
+        private Op(char code)
+        {
+            this.code = (byte) code;
+        }
+
+        private static Op of(byte code)
+        {
+            for ( Op op : values() ) {
+                if ( op.code == code ) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException( String.format("Unknown change operation 0x%02X", code) );
+        }
+    }
+
+    /**
+     * Length of the fields common to every event.
+     */
+    private static final int HEADER_LENGTH = 1 + 8 + StockPartKey.LENGTH;
+
+    /**
+     * The type of change.
+     */
+    private final Op op;
+
+    /**
+     * Sequence number assigned when the event was written.
+     */
+    private final long sequence;
+
+    /**
+     * Key of the record which changed.
+     */
+    private final byte[] key;
+
+    /**
+     * The new record for an add, the encoded ranges for an update,
+     * or an empty array for a delete.
+     */
+    private final byte[] payload;
+
+    private KsdsChangeEvent(Op op, long sequence, byte[] key, byte[] payload)
+    {
+        this.op = op;
+        this.sequence = sequence;
+        this.key = key;
+        this.payload = payload;
+    }
+
+    /**
+     * Creates an event for a record which has been added.
+     *
+     * @param sequence the sequence number of the event.
+     * @param after the record as added.
+     *
+     * @return the new event.
+     */
+    public static KsdsChangeEvent added(long sequence, byte[] after)
+    {
+        byte[] record = Arrays.copyOf(after, StockPart.STOCK_PART_len);
+        return new KsdsChangeEvent( Op.ADD, sequence, keyOf(after), record );
+    }
+
+    /**
+     * Creates an event for a record which has been rewritten, holding only
+     * the ranges of bytes which differ between the two records.
+     *
+     * @param sequence the sequence number of the event.
+     * @param before the record as read for update.
+     * @param after the record as rewritten.
+     *
+     * @return the new event.
+     */
+    public static KsdsChangeEvent updated(long sequence, byte[] before, byte[] after)
+    {
+        // Ranges are encoded as count, then offset, length, bytes
+        ByteBuffer bb = ByteBuffer.allocate(1 + 3 * StockPart.STOCK_PART_len);
+        bb.put((byte) 0);
+        int ranges = 0;
+
+        int i = 0;
+        while ( i < StockPart.STOCK_PART_len ) {
+
+            // Skip bytes which have not changed
+            if ( before[i] == after[i] ) {
+                i++;
+                continue;
+            }
+
+            // Find the end of this run of changed bytes
+            int start = i;
+            while ( i < StockPart.STOCK_PART_len && before[i] != after[i] ) {
+                i++;
+            }
+
+            bb.put((byte) start).put((byte) (i - start)).put(after, start, i - start);
+            ranges++;
+        }
+
+        bb.put(0, (byte) ranges);
+        return new KsdsChangeEvent( Op.UPDATE, sequence, keyOf(after), Arrays.copyOf(bb.array(), bb.position()) );
+    }
+
+    /**
+     * Creates an event for a record which has been deleted.
+     *
+     * @param sequence the sequence number of the event.
+     * @param before the record as it stood before deletion.
+     *
+     * @return the new event.
+     */
+    public static KsdsChangeEvent deleted(long sequence, byte[] before)
+    {
+        return new KsdsChangeEvent( Op.DELETE, sequence, keyOf(before), new byte[0] );
+    }
+
+    /**
+     * Decodes an event from its binary form.
+     *
+     * @param data an event created by {@link #toBytes()}.
+     *
+     * @return the decoded event.
+     *
+     * @throws IllegalArgumentException if the data is not a valid event.
+     */
+    public static KsdsChangeEvent fromBytes(byte[] data)
+    {
+        if ( data.length < HEADER_LENGTH ) {
+            throw new IllegalArgumentException("Change event is too short: " + data.length);
+        }
+
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        Op op = Op.of( bb.get() );
+        long sequence = bb.getLong();
+        byte[] key = new byte[StockPartKey.LENGTH];
+        bb.get(key);
+        byte[] payload = Arrays.copyOfRange(data, HEADER_LENGTH, data.length);
+
+        // Check the payload has the expected length for the operation
+        if ( op == Op.ADD && payload.length != StockPart.STOCK_PART_len
+                || op == Op.DELETE && payload.length != 0 ) {
+            throw new IllegalArgumentException("Change event has invalid length: " + data.length);
+        }
+
+        return new KsdsChangeEvent(op, sequence, key, payload);
+    }
+
+    /**
+     * Encodes this event in its binary form.
+     *
+     * @return the encoded event.
+     */
+    public byte[] toBytes()
+    {
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_LENGTH + this.payload.length);
+        bb.put(this.op.code).putLong(this.sequence).put(this.key).put(this.payload);
+        return bb.array();
+    }
+
+    /**
+     * Applies this event to a copy of a record.
+     *
+     * @param before the record before the change, which may be
+     * <code>null</code> for an add.
+     *
+     * @return the record after the change, or <code>null</code> for a delete.
+     */
+    public byte[] applyTo(byte[] before)
+    {
+        switch ( this.op ) {
+
+        case ADD:
+            return this.payload.clone();
+
+        case UPDATE:
+            // Copy each changed range over the previous record
+            byte[] after = before.clone();
+            int pos = 1;
+            for ( int r = 0; r < (this.payload[0] & 0xFF); r++ ) {
+                int offset = this.payload[pos] & 0xFF;
+                int length = this.payload[pos + 1] & 0xFF;
+                System.arraycopy(this.payload, pos + 2, after, offset, length);
+                pos += 2 + length;
+            }
+            return after;
+
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return the type of change.
+     */
+    public Op getOp()
+    {
+        return this.op;
+    }
+
+    /**
+     * @return the sequence number of the event.
+     */
+    public long getSequence()
+    {
+        return this.sequence;
+    }
+
+    /**
+     * @return a copy of the key of the record which changed.
+     */
+    public byte[] getKey()
+    {
+        return this.key.clone();
+    }
+
+    /**
+     * @return the part ID of the record which changed.
+     */
+    public int getPartId()
+    {
+        return StockPartKey.decode(this.key);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s #%d key 0x%08X (%d bytes)", this.op, this.sequence, getPartId(),
+                HEADER_LENGTH + this.payload.length);
+    }
+
+    /**
+     * Extracts the key from a record.
+     */
+    private static byte[] keyOf(byte[] record)
+    {
+        return Arrays.copyOf(record, StockPartKey.LENGTH);
+    }
+}
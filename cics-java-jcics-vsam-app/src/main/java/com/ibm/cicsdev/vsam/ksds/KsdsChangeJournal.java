@@ -0,0 +1,145 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.NameResource;
+import com.ibm.cics.server.TDQ;
+import com.ibm.cics.server.Task;
+
+/**
+ * Writes a {@link KsdsChangeEvent} to a transient data queue for every change
+ * made to the VSAM KSDS file, so that the changes can be replicated
+ * elsewhere by {@link KsdsChangeApplier}.
+ *
+ * A journal is registered with
+ * {@link KsdsExampleCommon#addListener(KsdsRecordListener)}, and writes each
+ * event in the task which made the change. If the queue is defined as a
+ * logically recoverable intrapartition queue, each event is therefore
+ * committed or backed out together with the change to the file, and no
+ * event is seen for a change which was backed out.
+ *
+ * Sequence numbers are taken from a counter shared by every journal in the
+ * JVM server, which starts from the current time in microseconds. Writes to a
+ * recoverable queue are serialised by CICS until the end of the writer's unit
+ * of work, so events from two tasks could otherwise reach the queue in the
+ * opposite order to their sequence numbers. The sequence number is therefore
+ * taken while holding a CICS enqueue on a resource named after the queue,
+ * which is also held until the end of the unit of work. Provided every
+ * change is made in the same JVM server, sequence numbers ascend in the
+ * order in which events are read from the queue, and continue to ascend
+ * across a restart unless events were written faster than one per
+ * microsecond. Events which are backed out leave gaps in the sequence.
+ */
+public class KsdsChangeJournal implements KsdsRecordListener
+{
+    /**
+     * Default name of the TDQ to write to.
+     */
+    public static final String DEFAULT_QUEUE_NAME = "XKSJ";
+
+    /**
+     * Prefix of the resource used to serialise writes to the queue.
+     */
+    private static final String RESOURCE_LOCK_PREFIX = "KSDSJRNL.";
+
+    /**
+     * Sequence number of the most recent event.
+     */
+    private static final AtomicLong SEQUENCE = new AtomicLong( System.currentTimeMillis() * 1_000 );
+
+    /**
+     * The queue to write events to.
+     */
+    private final TDQ tdq;
+
+    /**
+     * Serialises writes to the queue, in the same order as the queue.
+     */
+    private final NameResource lock;
+
+    /**
+     * Creates a journal which writes to the default queue.
+     */
+    public KsdsChangeJournal()
+    {
+        this(DEFAULT_QUEUE_NAME);
+    }
+
+    /**
+     * Creates a journal which writes to the specified queue.
+     *
+     * @param queueName the name of the TDQ to write to.
+     */
+    public KsdsChangeJournal(String queueName)
+    {
+        this.tdq = new TDQ();
+        this.tdq.setName(queueName);
+
+        this.lock = new NameResource();
+        this.lock.setName(RESOURCE_LOCK_PREFIX + queueName);
+    }
+
+    @Override
+    public void added(byte[] record)
+    {
+        write( KsdsChangeEvent.added(nextSequence(), record) );
+    }
+
+    @Override
+    public void updated(byte[] before, byte[] after)
+    {
+        write( KsdsChangeEvent.updated(nextSequence(), before, after) );
+    }
+
+    @Override
+    public void deleted(byte[] before)
+    {
+        write( KsdsChangeEvent.deleted(nextSequence(), before) );
+    }
+
+    /**
+     * Takes the lock serialising writes to the queue, which is held until
+     * the end of the unit of work, then takes the next sequence number.
+     * Taking the lock again in the same unit of work does not wait.
+     */
+    private long nextSequence()
+    {
+        try {
+            this.lock.enqueue();
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+
+        return SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * Writes a single event to the queue.
+     */
+    private void write(KsdsChangeEvent event)
+    {
+        try {
+            this.tdq.writeData( event.toBytes() );
+        }
+        catch (CicsConditionException cce) {
+
+            // Report the failure, then roll back the change which caused it
+            String strMsg = "Could not write change %s to queue %s";
+            Task.getTask().out.println( String.format(strMsg, event, this.tdq.getName()) );
+            throw new RuntimeException(cce);
+        }
+    }
+}
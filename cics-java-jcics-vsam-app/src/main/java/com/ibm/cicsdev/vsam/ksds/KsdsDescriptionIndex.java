@@ -0,0 +1,355 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ibm.cicsdev.vsam.StockPartView;
+
+/**
+ * An in-memory inverted index from the words of each part description to
+ * the part IDs whose description contains that word.
+ *
+ * Descriptions are split into words at spaces, and words are compared
+ * without regard to case. Each word maps to a posting list, which is a
+ * sorted array of primitive part IDs, so a query for several words is
+ * answered by intersecting the lists rather than reading any records.
+ *
+ * The index is populated from the file with {@link #build(int)}, which uses
+ * a {@link KsdsPartitionedScan}, and can then be kept up to date by
+ * registering it with {@link KsdsExampleCommon#addListener(KsdsRecordListener)}.
+ * An instance is intended to be held in a static field, and all methods are
+ * safe to call from concurrent tasks.
+ *
+ * Like {@link KsdsRecordCache}, the index is not part of the CICS unit of
+ * work. A change which is backed out after the index has been updated leaves
+ * the index out of step with the file until it is next built, so callers
+ * should read each record found to confirm it.
+ */
+public class KsdsDescriptionIndex implements KsdsRecordListener
+{
+    /**
+     * Posting list for each word.
+     */
+    private Map<String, Postings> index = new HashMap<>();
+
+    /**
+     * Allows concurrent queries, but only one update at a time.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Replaces the contents of the index with every description in the file,
+     * browsing the file in several concurrent ranges.
+     *
+     * Each range builds its own partial index, with no locking. The ranges
+     * are then merged in key order, so every posting list can be formed by
+     * appending rather than inserting. Changes made to the index while it
+     * is being built are lost, so it should be built before it is registered
+     * as a listener.
+     *
+     * @param partitions the number of ranges to browse concurrently.
+     *
+     * @return the number of distinct words in the index.
+     */
+    public int build(int partitions)
+    {
+        // Build a partial index for each range concurrently
+        KsdsPartitionedScan scan = new KsdsPartitionedScan(partitions, true);
+        List<Map<String, Postings>> partials = scan.scan( HashMap::new,
+                (partial, view) -> addAll(partial, view.getDescription(), view.getPartId()) );
+
+        // Merge the partial indexes in ascending key order
+        Map<String, Postings> merged = new HashMap<>();
+        for ( Map<String, Postings> partial : partials ) {
+            for ( Map.Entry<String, Postings> e : partial.entrySet() ) {
+                merged.computeIfAbsent( e.getKey(), k -> new Postings() ).appendAll( e.getValue() );
+            }
+        }
+
+        // Swap in the new index
+        this.lock.writeLock().lock();
+        try {
+            this.index = merged;
+            return merged.size();
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the part IDs whose description contains every one of the
+     * supplied words.
+     *
+     * @param words the words to find, in any case.
+     *
+     * @return the matching part IDs, in ascending order.
+     */
+    public int[] search(String... words)
+    {
+        if ( words.length == 0 ) {
+            return new int[0];
+        }
+
+        this.lock.readLock().lock();
+        try {
+            // Find the posting list for each word
+            Postings[] lists = new Postings[words.length];
+            for ( int i = 0; i < words.length; i++ ) {
+                lists[i] = this.index.get( normalise(words[i]) );
+
+                // A word which appears nowhere means nothing can match
+                if ( lists[i] == null ) {
+                    return new int[0];
+                }
+            }
+
+            // Start from the shortest list, so the result only shrinks
+            Arrays.sort( lists, Comparator.comparingInt(p -> p.size) );
+            int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+            int count = result.length;
+
+            // Keep only the part IDs present in every other list
+            for ( int i = 1; i < lists.length && count > 0; i++ ) {
+                count = intersect(result, count, lists[i]);
+            }
+
+            return Arrays.copyOf(result, count);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the part IDs whose description contains every word in the
+     * supplied query, for example "large metal widget".
+     *
+     * @param query the words to find, separated by spaces.
+     *
+     * @return the matching part IDs, in ascending order.
+     */
+    public int[] search(String query)
+    {
+        return search( query.trim().split(" +") );
+    }
+
+    /**
+     * @return the number of distinct words in the index.
+     */
+    public int getWordCount()
+    {
+        this.lock.readLock().lock();
+        try {
+            return this.index.size();
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void added(byte[] record)
+    {
+        StockPartView view = new StockPartView(record);
+
+        this.lock.writeLock().lock();
+        try {
+            addAll( this.index, view.getDescription(), view.getPartId() );
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updated(byte[] before, byte[] after)
+    {
+        // Nothing to do unless the description has changed
+        int from = StockPartView.DESCRIPTION_OFFSET;
+        int to = from + StockPartView.DESCRIPTION_LENGTH;
+        if ( Arrays.equals(before, from, to, after, from, to) ) {
+            return;
+        }
+
+        StockPartView viewBefore = new StockPartView(before);
+        StockPartView viewAfter = new StockPartView(after);
+
+        this.lock.writeLock().lock();
+        try {
+            removeAll( viewBefore.getDescription(), viewBefore.getPartId() );
+            addAll( this.index, viewAfter.getDescription(), viewAfter.getPartId() );
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleted(byte[] before)
+    {
+        StockPartView view = new StockPartView(before);
+
+        this.lock.writeLock().lock();
+        try {
+            removeAll( view.getDescription(), view.getPartId() );
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("words=%d", getWordCount());
+    }
+
+    /**
+     * Adds a part ID to the posting list of every word in a description.
+     */
+    private static void addAll(Map<String, Postings> index, String description, int partId)
+    {
+        for ( String word : description.trim().split(" +") ) {
+            if ( !word.isEmpty() ) {
+                index.computeIfAbsent( normalise(word), k -> new Postings() ).add(partId);
+            }
+        }
+    }
+
+    /**
+     * Removes a part ID from the posting list of every word in a description.
+     */
+    private void removeAll(String description, int partId)
+    {
+        for ( String word : description.trim().split(" +") ) {
+
+            String key = normalise(word);
+            Postings p = this.index.get(key);
+
+            // Drop the word entirely once no part uses it
+            if ( p != null && p.remove(partId) && p.size == 0 ) {
+                this.index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Converts a word to the form held in the index.
+     */
+    private static String normalise(String word)
+    {
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Removes from the first <code>count</code> entries of a sorted array
+     * every value which is not in the supplied posting list.
+     *
+     * @return the number of entries remaining.
+     */
+    private static int intersect(int[] values, int count, Postings list)
+    {
+        int kept = 0;
+        int pos = 0;
+
+        for ( int i = 0; i < count && pos < list.size; i++ ) {
+
+            // Both arrays are sorted, so the search can start from the last match
+            int found = Arrays.binarySearch(list.ids, pos, list.size, values[i]);
+            if ( found >= 0 ) {
+                values[kept++] = values[i];
+                pos = found + 1;
+            }
+            else {
+                pos = -found - 1;
+            }
+        }
+
+        return kept;
+    }
+
+    /**
+     * A sorted list of part IDs, held in a primitive array.
+     */
+    private static final class Postings
+    {
+        private int[] ids = new int[4];
+        private int size;
+
+        /**
+         * Adds a part ID, keeping the list sorted and free of duplicates.
+         */
+        private void add(int partId)
+        {
+            // Part IDs usually arrive in ascending order, so check the end first
+            int pos;
+            if ( this.size == 0 || this.ids[this.size - 1] < partId ) {
+                pos = this.size;
+            }
+            else {
+                pos = Arrays.binarySearch(this.ids, 0, this.size, partId);
+                if ( pos >= 0 ) {
+                    return;
+                }
+                pos = -pos - 1;
+            }
+
+            // Grow the array as required
+            if ( this.size == this.ids.length ) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+
+            System.arraycopy(this.ids, pos, this.ids, pos + 1, this.size - pos);
+            this.ids[pos] = partId;
+            this.size++;
+        }
+
+        /**
+         * Removes a part ID, if present.
+         *
+         * @return true if the part ID was removed.
+         */
+        private boolean remove(int partId)
+        {
+            int pos = Arrays.binarySearch(this.ids, 0, this.size, partId);
+            if ( pos < 0 ) {
+                return false;
+            }
+
+            System.arraycopy(this.ids, pos + 1, this.ids, pos, this.size - pos - 1);
+            this.size--;
+            return true;
+        }
+
+        /**
+         * Appends every part ID from another list, all of which must be
+         * higher than those already present.
+         */
+        private void appendAll(Postings other)
+        {
+            if ( this.size + other.size > this.ids.length ) {
+                this.ids = Arrays.copyOf(this.ids, Math.max(this.size + other.size, this.ids.length * 2));
+            }
+
+            System.arraycopy(other.ids, 0, this.ids, this.size, other.size);
+            this.size += other.size;
+        }
+    }
+}
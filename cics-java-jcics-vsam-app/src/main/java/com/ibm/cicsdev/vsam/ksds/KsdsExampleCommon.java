@@ -10,8 +10,18 @@
 
 package com.ibm.cicsdev.vsam.ksds;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.ibm.cics.server.CicsConditionException;
 import com.ibm.cics.server.DuplicateRecordException;
@@ -25,7 +35,13 @@ import com.ibm.cics.server.RecordNotFoundException;
 import com.ibm.cics.server.SearchType;
 import com.ibm.cics.server.Task;
 import com.ibm.cicsdev.bean.StockPart;
+import com.ibm.cicsdev.vsam.StockAggregate;
 import com.ibm.cicsdev.vsam.StockPartHelper;
+import com.ibm.cicsdev.vsam.StockPartKey;
+import com.ibm.cicsdev.vsam.StockPartMutator;
+import com.ibm.cicsdev.vsam.StockPartSnapshot;
+import com.ibm.cicsdev.vsam.StockPartSnapshotWriter;
+import com.ibm.cicsdev.vsam.StockPartView;
 import com.ibm.cicsdev.vsam.VsamExampleCommon;
 
 /**
@@ -39,20 +55,119 @@ public class KsdsExampleCommon extends VsamExampleCommon
      */
     private static final String FILE_NAME = "XMPLKSDS";
 
+    /**
+     * Number of records written between each syncpoint when adding
+     * records in bulk.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Time for which records are held by {@link #update(int, Consumer)},
+     * shared by every task in the JVM server.
+     */
+    private static final KsdsLockStatistics LOCK_STATISTICS = new KsdsLockStatistics();
+
     /**
      * A field to hold a reference to the VSAM KSDS file this
      * instance will access. 
      */
     private final KSDS ksds;
     
+    /**
+     * An optional cache of records, used by {@link #readRecord(int)}, or
+     * <code>null</code> if records are always read from the file.
+     */
+    private final KsdsRecordCache cache;
+    
+    /**
+     * An optional filter of the keys present in the file, or
+     * <code>null</code> if the file must always be checked.
+     */
+    private final KsdsKeyFilter filter;
+    
+    /**
+     * An optional secondary index by supplier, maintained as records are
+     * added, updated and deleted, or <code>null</code> if there is none.
+     */
+    private final KsdsSupplierIndex supplierIndex;
+    
+    /**
+     * Listeners to be told of each change made to the file.
+     */
+    private final List<KsdsRecordListener> listeners = new ArrayList<>();
+    
     /**
      * Constructor to initialise the reference to the sample file.
      */    
     public KsdsExampleCommon()
+    {
+        this(null, null, null);
+    }
+    
+    /**
+     * Constructor to initialise the reference to the sample file, and to
+     * read records through the supplied cache.
+     * 
+     * The cache should be held in a static field so that it is shared by
+     * every task in the JVM server.
+     * 
+     * @param cache the cache to use, or <code>null</code> for no caching.
+     */
+    public KsdsExampleCommon(KsdsRecordCache cache)
+    {
+        this(cache, null);
+    }
+    
+    /**
+     * Constructor to initialise the reference to the sample file, to read
+     * records through the supplied cache, and to avoid looking for keys
+     * which the supplied filter reports as absent.
+     * 
+     * Both the cache and the filter should be held in static fields so that
+     * they are shared by every task in the JVM server.
+     * 
+     * @param cache the cache to use, or <code>null</code> for no caching.
+     * @param filter the key filter to use and maintain, or <code>null</code>.
+     */
+    public KsdsExampleCommon(KsdsRecordCache cache, KsdsKeyFilter filter)
+    {
+        this(cache, filter, null);
+    }
+    
+    /**
+     * Constructor to initialise the reference to the sample file, with an
+     * optional cache and key filter, and to maintain the supplied secondary
+     * index as records are added, updated and deleted.
+     * 
+     * @param cache the cache to use, or <code>null</code> for no caching.
+     * @param filter the key filter to use and maintain, or <code>null</code>.
+     * @param supplierIndex the supplier index to maintain and to use for
+     * {@link #findBySupplier(int)}, or <code>null</code>.
+     */
+    public KsdsExampleCommon(KsdsRecordCache cache, KsdsKeyFilter filter, KsdsSupplierIndex supplierIndex)
     {
         // Create a new KSDS instance and initialise
         this.ksds = new KSDS();
-        this.ksds.setName(FILE_NAME);        
+        this.ksds.setName(FILE_NAME);
+        
+        // Save the optional components, any of which may be null
+        this.cache = cache;
+        this.filter = filter;
+        this.supplierIndex = supplierIndex;
+    }
+    
+    /**
+     * Registers a listener to be told of each record added, updated, or
+     * deleted through this instance.
+     * 
+     * @param listener the listener to register.
+     * 
+     * @return this instance, for convenience.
+     */
+    public KsdsExampleCommon addListener(KsdsRecordListener listener)
+    {
+        this.listeners.add(listener);
+        return this;
     }
 
     /**
@@ -71,6 +186,21 @@ public class KsdsExampleCommon extends VsamExampleCommon
         try {
             // Write the record into the file at the specified key
             this.ksds.write(key, record);
+            
+            // The key is now present in the file
+            if ( this.filter != null ) {
+                this.filter.add( sp.getPartId() );
+            }
+            
+            // Index the new record in the same unit of work
+            if ( this.supplierIndex != null ) {
+                this.supplierIndex.add( sp.getSupplier(), sp.getPartId() );
+            }
+            
+            // Tell any listeners about the new record
+            for ( KsdsRecordListener l : this.listeners ) {
+                l.added(record);
+            }
         }
         catch (DuplicateRecordException dre) {
             
@@ -98,6 +228,169 @@ public class KsdsExampleCommon extends VsamExampleCommon
         }
     }
 
+    /**
+     * Adds a collection of records to the VSAM KSDS file, committing every
+     * {@link #DEFAULT_BATCH_SIZE} records.
+     *
+     * @param parts the {@link StockPart} instances to write to the file.
+     *
+     * @return a list of the part IDs which could not be written because
+     * a record with the same key already exists in the file.
+     *
+     * @see #addRecords(Collection, int)
+     */
+    public List<Integer> addRecords(Collection<StockPart> parts)
+    {
+        return addRecords(parts, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Provides an example of loading a large number of records into a VSAM KSDS
+     * file using mass insert.
+     *
+     * The records are sorted into ascending key sequence and then written using
+     * the writeSequential() method, which corresponds to the MASSINSERT option of
+     * the EXEC CICS WRITE command. VSAM can then add each record to the end of the
+     * current control interval rather than searching the index for every write.
+     *
+     * The mass insert is ended and the unit of work committed after every
+     * <code>batchSize</code> records, so that the number of locks held by the
+     * task remains bounded. A duplicate key is reported and skipped rather than
+     * aborting the whole load.
+     *
+     * @param parts the {@link StockPart} instances to write to the file.
+     * @param batchSize the number of records to write between each syncpoint.
+     *
+     * @return a list of the part IDs which could not be written because
+     * a record with the same key already exists in the file.
+     */
+    public List<Integer> addRecords(Collection<StockPart> parts, int batchSize)
+    {
+        // Validate the batch size
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+
+        // Build the key for each record once, then sort into ascending key order
+        List<KeyedRecord> sorted = new ArrayList<>(parts.size());
+        for ( StockPart sp : parts ) {
+            sorted.add( new KeyedRecord(StockPartHelper.getKey(sp), sp) );
+        }
+        sorted.sort( (a, b) -> Arrays.compareUnsigned(a.key, b.key) );
+
+        // Keys which were rejected as duplicates
+        List<Integer> duplicates = new ArrayList<>();
+
+        // Statistics for the current batch
+        int batch = 0;
+        int written = 0;
+        int rejected = 0;
+        long batchStart = System.nanoTime();
+
+        try {
+            // Write each record in key sequence
+            for ( KeyedRecord kr : sorted ) {
+
+                try {
+                    // Write the record as part of a mass insert
+                    this.ksds.writeSequential(kr.key, kr.sp.getByteBuffer());
+                    written++;
+
+                    // The key is now present in the file
+                    if ( this.filter != null ) {
+                        this.filter.add( kr.sp.getPartId() );
+                    }
+
+                    // Index the new record in the same unit of work
+                    if ( this.supplierIndex != null ) {
+                        this.supplierIndex.add( kr.sp.getSupplier(), kr.sp.getPartId() );
+                    }
+
+                    // Tell any listeners about the new record
+                    for ( KsdsRecordListener l : this.listeners ) {
+                        l.added( kr.sp.getByteBuffer() );
+                    }
+                }
+                catch (DuplicateRecordException dre) {
+
+                    // Collision on this key - note it and carry on with the batch
+                    String strMsg = "Tried to insert duplicate key 0x%08X";
+                    Task.getTask().out.println( String.format(strMsg, kr.sp.getPartId()) );
+                    duplicates.add(kr.sp.getPartId());
+                    rejected++;
+                }
+
+                // Commit once we have reached the end of a batch
+                if ( written + rejected == batchSize ) {
+                    endMassInsert();
+                    reportBatch(++batch, written, rejected, System.nanoTime() - batchStart);
+
+                    // Reset for the next batch
+                    written = 0;
+                    rejected = 0;
+                    batchStart = System.nanoTime();
+                }
+            }
+
+            // Commit any partial batch remaining
+            if ( written + rejected > 0 ) {
+                endMassInsert();
+                reportBatch(++batch, written, rejected, System.nanoTime() - batchStart);
+            }
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for WRITE to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not addable
+                String strMsg = "Add operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+
+        // Return the keys we could not insert
+        return duplicates;
+    }
+
+    /**
+     * Ends the current mass insert operation and commits the unit of work.
+     *
+     * @throws CicsConditionException if the mass insert could not be ended.
+     */
+    private void endMassInsert() throws CicsConditionException
+    {
+        // Release the VSAM resources held by the mass insert
+        this.ksds.unlock();
+
+        // Harden the batch to the file
+        commitUnitOfWork();
+    }
+
+    /**
+     * Writes the throughput of a single mass insert batch to the task output.
+     *
+     * @param batch the number of the batch, starting at 1.
+     * @param written the number of records written in the batch.
+     * @param rejected the number of duplicate records in the batch.
+     * @param elapsed the elapsed time for the batch in nanoseconds.
+     */
+    private static void reportBatch(int batch, int written, int rejected, long elapsed)
+    {
+        // Avoid a division by zero for an implausibly fast batch
+        double rate = elapsed > 0 ? (written + rejected) * 1_000_000_000.0d / elapsed : 0.0d;
+
+        String strMsg = "Batch %d: wrote %d records, %d duplicates in %d ms (%.0f records/sec)";
+        Task.getTask().out.println( String.format(strMsg, batch, written, rejected, elapsed / 1_000_000, rate) );
+    }
+
     /**
      * Provides a simple example of updating a single record in a VSAM KSDS file.
      * 
@@ -110,11 +403,39 @@ public class KsdsExampleCommon extends VsamExampleCommon
      * @param strDescription the new description to store in the VSAM file.
      * 
      * @return the updated {@link StockPart} instance.
+     * 
+     * @see #update(int, Consumer)
      */
     public StockPart updateRecord(int partId, String strDescription)
     {
-        // Use the StockPartHelper class to get a byte[] from this part ID 
-        byte[] keyBytes = StockPartHelper.getKey(partId);
+        return update(partId, m -> m.setDescription(strDescription));
+    }
+    
+    /**
+     * Provides an example of applying any number of field changes to a single
+     * record in a VSAM KSDS file, using one read-modify-write cycle.
+     * 
+     * The record is read and locked using the readForUpdate() method, and a
+     * {@link StockPartMutator} bound to the record is passed to the supplied
+     * consumer. Each change made by the consumer is encoded directly into the
+     * bytes of the affected field, leaving the rest of the record as read.
+     * The record is then written back using the rewrite() method, or simply
+     * unlocked if the consumer did not change anything.
+     * 
+     * The consumer runs while the record is locked, so it should only set
+     * fields, and should not perform any other slow processing. The time
+     * between the read and the rewrite is recorded in the statistics
+     * returned by {@link #getLockStatistics()}.
+     * 
+     * @param partId the part ID of the record to update.
+     * @param changes applies the field changes to the record.
+     * 
+     * @return the updated {@link StockPart} instance.
+     */
+    public StockPart update(int partId, Consumer<? super StockPartMutator> changes)
+    {
+        // Encode the part ID directly as a key
+        byte[] keyBytes = StockPartKey.toKey(partId);
 
         try {            
             // Holder object to receive the data
@@ -122,19 +443,54 @@ public class KsdsExampleCommon extends VsamExampleCommon
 
             // Read the record at the specified key and lock
             this.ksds.readForUpdate(keyBytes, SearchType.EQUAL, rh);
+            long locked = System.nanoTime();
 
-            // Create a StockPart instance from the record
-            byte[] readBytes = rh.getValue();
-            StockPart sp = new StockPart(readBytes);
-
-            // Update the description
-            sp.setDescription(strDescription);
+            // Apply the changes directly to the record that was read
+            byte[] record = rh.getValue();
+            StockPartMutator mutator = new StockPartMutator().bind(record);
+            int supplierBefore = mutator.getSupplier();
+            
+            // Listeners need the record as it was read
+            byte[] before = this.listeners.isEmpty() ? null : record.clone();
+            
+            try {
+                changes.accept(mutator);
+            }
+            catch (RuntimeException re) {
+                // Release the lock before passing the failure on
+                this.ksds.unlock();
+                throw re;
+            }
             
-            // Rewrite the record with the updated data
-            this.ksds.rewrite( sp.getByteBuffer() );
+            if ( mutator.isModified() ) {
+                // Rewrite the record with the updated data
+                this.ksds.rewrite(record);
+                
+                // Any cached copy is now out of date
+                invalidateCache(partId);
+                
+                // Move the index entry if the supplier has changed
+                int supplierAfter = mutator.getSupplier();
+                if ( this.supplierIndex != null && supplierAfter != supplierBefore ) {
+                    this.supplierIndex.remove(supplierBefore, partId);
+                    this.supplierIndex.add(supplierAfter, partId);
+                }
+                
+                // Tell any listeners about the change
+                for ( KsdsRecordListener l : this.listeners ) {
+                    l.updated(before, record);
+                }
+            }
+            else {
+                // Nothing changed, so just release the lock
+                this.ksds.unlock();
+            }
+            
+            // Record how long the record was held
+            LOCK_STATISTICS.record(partId, System.nanoTime() - locked);
 
             // Return the updated StockPart instance
-            return sp;
+            return new StockPart(record);
         }
         catch (RecordNotFoundException rnfe) {
             // Initial read failed - key not found in file
@@ -161,6 +517,131 @@ public class KsdsExampleCommon extends VsamExampleCommon
         }
     }
     
+    /**
+     * Returns the record lock statistics shared by every task in the JVM
+     * server, as recorded by {@link #update(int, Consumer)}.
+     * 
+     * @return the lock statistics.
+     */
+    public static KsdsLockStatistics getLockStatistics()
+    {
+        return LOCK_STATISTICS;
+    }
+    
+    /**
+     * Generates a new record with a random part ID, using the key filter,
+     * if there is one, to avoid part IDs already present in the file.
+     * 
+     * The filter only reports keys which are definitely absent, so a
+     * duplicate key is avoided without any file I/O. If no free key is found
+     * within a few attempts, the last record generated is returned anyway.
+     * 
+     * @return a new {@link StockPart} instance.
+     */
+    public StockPart generateRecord()
+    {
+        StockPart sp = StockPartHelper.generate();
+        
+        // Try a few more keys while the filter cannot rule out a duplicate. No
+        // file I/O confirms these probes, so they must not affect the observed rate.
+        if ( this.filter != null ) {
+            for ( int i = 0; i < 8 && this.filter.mightContainUncounted(sp.getPartId()); i++ ) {
+                sp = StockPartHelper.generate();
+            }
+        }
+        
+        return sp;
+    }
+    
+    /**
+     * Reads a single record from the VSAM KSDS file, returning
+     * <code>null</code> rather than failing if the record is not present.
+     * 
+     * If the key filter reports that the key is definitely absent, no
+     * file I/O is performed at all.
+     * 
+     * @param partId the key of the record to locate in the VSAM file.
+     * 
+     * @return a {@link StockPart} instance representing the record, or
+     * <code>null</code> if there is no record with the specified key.
+     */
+    public StockPart findRecord(int partId)
+    {
+        // Avoid the read entirely if the key cannot be present
+        if ( this.filter != null && !this.filter.mightContain(partId) ) {
+            return null;
+        }
+        
+        // Return the cached copy of the record if we have one
+        if ( this.cache != null ) {
+            byte[] cached = this.cache.get(partId);
+            if ( cached != null ) {
+                return new StockPart(cached);
+            }
+        }
+        
+        try {            
+            // Holder object to receive the data
+            RecordHolder rh = new RecordHolder();
+
+            // Read the record identified by the supplied key 
+            this.ksds.read(StockPartKey.toKey(partId), SearchType.EQUAL, rh);
+            
+            // Keep a copy for subsequent reads
+            if ( this.cache != null ) {
+                this.cache.put(partId, rh.getValue());
+            }
+
+            // Create a StockPart instance from the record
+            return new StockPart( rh.getValue() );
+        }
+        catch (RecordNotFoundException rnfe) {
+            // The filter could not rule this key out, but it was not there
+            if ( this.filter != null ) {
+                this.filter.noteFalsePositive();
+            }
+            return null;
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+    }
+    
+    /**
+     * Finds every record from the specified supplier, using the supplier
+     * index to find the part IDs, and then reading each record by key.
+     * 
+     * The cost of the lookup depends only on the number of records found,
+     * not on the size of the file.
+     * 
+     * @param supplier the supplier to find.
+     * 
+     * @return the records from the supplier, in ascending part ID order.
+     * 
+     * @throws IllegalStateException if no supplier index is in use.
+     */
+    public List<StockPart> findBySupplier(int supplier)
+    {
+        if ( this.supplierIndex == null ) {
+            throw new IllegalStateException("No supplier index is in use");
+        }
+        
+        // Find the keys from the index
+        int[] partIds = this.supplierIndex.partIds(supplier);
+        List<StockPart> list = new ArrayList<>(partIds.length);
+        
+        // Read each record, skipping any which have since been deleted
+        for ( int partId : partIds ) {
+            StockPart sp = findRecord(partId);
+            if ( sp != null ) {
+                list.add(sp);
+            }
+        }
+        
+        return list;
+    }
+    
     /**
      * Provides a simple example of reading a single record from a VSAM KSDS file.
      * 
@@ -171,8 +652,16 @@ public class KsdsExampleCommon extends VsamExampleCommon
      */
     public StockPart readRecord(int partId)
     {        
-        // Use the StockPartHelper class to get a byte[] from this part ID 
-        byte[] keyBytes = StockPartHelper.getKey(partId);
+        // Return the cached copy of the record if we have one
+        if ( this.cache != null ) {
+            byte[] cached = this.cache.get(partId);
+            if ( cached != null ) {
+                return new StockPart(cached);
+            }
+        }
+        
+        // Encode the part ID directly as a key
+        byte[] keyBytes = StockPartKey.toKey(partId);
 
         try {            
             // Holder object to receive the data
@@ -180,6 +669,11 @@ public class KsdsExampleCommon extends VsamExampleCommon
 
             // Read the record identified by the supplied key 
             this.ksds.read(keyBytes, SearchType.EQUAL, rh);
+            
+            // Keep a copy for subsequent reads
+            if ( this.cache != null ) {
+                this.cache.put(partId, rh.getValue());
+            }
 
             // Create a StockPart instance from the record
             return new StockPart( rh.getValue() );
@@ -220,7 +714,7 @@ public class KsdsExampleCommon extends VsamExampleCommon
     public List<StockPart> browse(int partIdStart, int count)
     {
         // Start a browse of the file at the supplied key
-        byte[] key = StockPartHelper.getKey(partIdStart);
+        byte[] key = StockPartKey.toKey(partIdStart);
         
         // The list instance to return
         List<StockPart> list = new ArrayList<>(count);
@@ -273,36 +767,598 @@ public class KsdsExampleCommon extends VsamExampleCommon
         // Return the list
         return list;
     }
-    
+
     /**
-     * Provides a simple example of deleting a single record from a VSAM KSDS file.
+     * Provides an example of browsing a VSAM KSDS dataset without creating
+     * a new object for each record.
      * 
-     * @param partId the key of the record to locate in the VSAM file.
+     * Each record is passed to the supplied consumer through the same
+     * {@link StockPartView} instance, which is rebound to the record just read.
+     * The consumer must therefore copy any values it needs to keep, for example
+     * by calling {@link StockPartView#copy()}.
      * 
-     * @return a {@link StockPart} instance representing the record in the VSAM file
-     * identified by the specified key before it was deleted.
+     * @param partIdStart the part ID from which the browse should begin.
+     * @param count the maximum number of records to pass to the consumer.
+     * @param consumer the callback to receive each record.
+     * 
+     * @return the number of records passed to the consumer.
      */
-    public StockPart deleteRecord(int partId)
+    public int browse(int partIdStart, int count, Consumer<? super StockPartView> consumer)
     {
-        // Use the StockPartHelper class to get a byte[] from this key 
-        byte[] keyBytes = StockPartHelper.getKey(partId);
-
-        // The record as it stood before deletion
-        StockPart sp;
-        
-        /*
-         * Lock the record for an update.
-         */
+        return browseRange(partIdStart, StockPartKey.MAX_PART_ID, count, consumer);
+    }
 
-        try {
-            // Holder object to receive the data
-            RecordHolder rh = new RecordHolder();
+    /**
+     * Provides an example of browsing a range of keys in a VSAM KSDS dataset,
+     * passing each record to the supplied consumer through a reused
+     * {@link StockPartView}.
+     * 
+     * The browse ends as soon as a record beyond the end of the range is read.
+     * 
+     * @param partIdFrom the lowest part ID in the range.
+     * @param partIdTo the highest part ID in the range, inclusive.
+     * @param consumer the callback to receive each record.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    public int browseRange(int partIdFrom, int partIdTo, Consumer<? super StockPartView> consumer)
+    {
+        return browseRange(partIdFrom, partIdTo, Integer.MAX_VALUE, consumer);
+    }
 
-            // Read the record at the specified key and lock
-            this.ksds.readForUpdate(keyBytes, SearchType.EQUAL, rh);
+    /**
+     * Browses a range of keys, stopping at the end of the range or after
+     * the specified number of records, whichever comes first.
+     * 
+     * @param partIdFrom the lowest part ID in the range.
+     * @param partIdTo the highest part ID in the range, inclusive.
+     * @param count the maximum number of records to pass to the consumer.
+     * @param consumer the callback to receive each record.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    private int browseRange(int partIdFrom, int partIdTo, int count, Consumer<? super StockPartView> consumer)
+    {
+        // Start a browse of the file at the supplied key
+        byte[] key = StockPartKey.toKey(partIdFrom);
+        
+        // Holder object to receive the data
+        RecordHolder rh = new RecordHolder();
+        KeyHolder kh = new KeyHolder();
+        
+        // The single view reused for every record
+        StockPartView view = new StockPartView();
+        
+        // Number of records processed
+        int processed = 0;
+        
+        try {            
+            // Start the browse of the file
+            KeyedFileBrowse kfb = this.ksds.startBrowse(key, SearchType.GTEQ);
             
-            // Convert to a StockPart object
-            sp = new StockPart( rh.getValue() );
+            try {
+                // Loop until we reach maximum count
+                while ( processed < count ) {
+                    
+                    // Read a record from the file
+                    kfb.next(rh, kh);
+                    
+                    // Rebind the view, stopping once we pass the end of the range
+                    view.bind(rh.getValue());
+                    if ( view.getPartId() > partIdTo ) {
+                        break;
+                    }
+                    
+                    // Pass to the consumer
+                    consumer.accept(view);
+                    processed++;
+                }
+            }
+            catch (EndOfFileException eof) {
+                // Normal termination of loop - no further records
+            }
+            finally {
+                // Always end the browse, even if the consumer failed
+                kfb.end();
+            }
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Initial browse failed - no records matching the supplied part ID
+        }
+        catch (InvalidRequestException ire) {
+            
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable or updateable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+            
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+        
+        // Return the number of records processed
+        return processed;
+    }
+
+    /**
+     * Provides an example of a generic browse of a VSAM KSDS dataset, which
+     * locates records using only the leading part of the key.
+     * 
+     * For example, a prefix of 1234 with a length of 4 passes every record
+     * with a part ID from 12340000 to 12349999 to the consumer. The browse
+     * is started with the GENERIC option, so an empty range is detected by
+     * the browse start itself, and the browse ends as soon as a record is
+     * read whose key does not begin with the prefix.
+     * 
+     * @param prefix the value of the leading digits of the part ID.
+     * @param prefixLength the number of leading digits to match, from 1 to 8.
+     * @param consumer the callback to receive each record, through a
+     * reused {@link StockPartView}.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    public int browsePrefix(int prefix, int prefixLength, Consumer<? super StockPartView> consumer)
+    {
+        // Validate the prefix length
+        if ( prefixLength < 1 || prefixLength > StockPartKey.LENGTH ) {
+            String strMsg = "Prefix length must be from 1 to %d";
+            throw new IllegalArgumentException( String.format(strMsg, StockPartKey.LENGTH) );
+        }
+        
+        // Pad the prefix with trailing zeros to form a full key
+        int scale = 1;
+        for ( int i = prefixLength; i < StockPartKey.LENGTH; i++ ) {
+            scale *= 10;
+        }
+        if ( prefix < 0 || prefix >= (StockPartKey.MAX_PART_ID + 1) / scale ) {
+            String strMsg = "Prefix %d does not fit in %d digits";
+            throw new IllegalArgumentException( String.format(strMsg, prefix, prefixLength) );
+        }
+        byte[] key = StockPartKey.toKey(prefix * scale);
+        
+        // Holder objects to receive the data
+        RecordHolder rh = new RecordHolder();
+        KeyHolder kh = new KeyHolder();
+        
+        // The single view reused for every record
+        StockPartView view = new StockPartView();
+        
+        // Number of records processed
+        int processed = 0;
+        
+        try {
+            // Start a browse at the first key which begins with the prefix
+            KeyedFileBrowse kfb = this.ksds.startGenericBrowse(key, prefixLength, SearchType.EQUAL);
+            
+            try {
+                while ( true ) {
+                    
+                    // Read a record from the file
+                    kfb.next(rh, kh);
+                    byte[] record = rh.getValue();
+                    
+                    // Stop as soon as the key no longer matches the prefix
+                    if ( Arrays.mismatch(record, 0, prefixLength, key, 0, prefixLength) >= 0 ) {
+                        break;
+                    }
+                    
+                    // Rebind the view and pass to the consumer
+                    consumer.accept( view.bind(record) );
+                    processed++;
+                }
+            }
+            catch (EndOfFileException eof) {
+                // Normal termination of loop - no further records
+            }
+            finally {
+                kfb.end();
+            }
+        }
+        catch (RecordNotFoundException rnfe) {
+            // No records begin with the supplied prefix
+        }
+        catch (InvalidRequestException ire) {
+            
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable or updateable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+            
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+        
+        // Return the number of records processed
+        return processed;
+    }
+
+    /**
+     * Provides an example of paging through a VSAM KSDS dataset in either
+     * direction.
+     * 
+     * Each page is located from the boundary key held in the cursor, so a
+     * page costs a single browse start plus one read per record however deep
+     * into the file it is. One extra record is read to find out whether a
+     * further page exists in the direction of travel.
+     * 
+     * @param cursor the position from which to read, or <code>null</code>
+     * to read the first page in the file.
+     * @param pageSize the maximum number of records to return.
+     * 
+     * @return the page of records, with cursors for the adjacent pages.
+     */
+    public KsdsPage browsePage(KsdsPageCursor cursor, int pageSize)
+    {
+        if ( pageSize < 1 ) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        
+        // Read backwards only if explicitly requested
+        boolean forwards = cursor == null || cursor.getDirection() == KsdsPageCursor.Direction.NEXT;
+        
+        // Read one more record than needed to detect a further page
+        List<StockPart> list = new ArrayList<>(pageSize + 1);
+        
+        if ( forwards ) {
+            // Start from the record after the boundary key
+            if ( cursor == null || cursor.getPartId() < StockPartKey.MAX_PART_ID ) {
+                int partIdStart = cursor == null ? 0 : cursor.getPartId() + 1;
+                readPage(StockPartKey.toKey(partIdStart), true, Integer.MAX_VALUE, pageSize + 1, list);
+            }
+        }
+        else {
+            // Read backwards from the boundary record, which is itself skipped
+            if ( cursor.getPartId() > 0 ) {
+                readPage(StockPartKey.toKey(cursor.getPartId()), false, cursor.getPartId(), pageSize + 1, list);
+            }
+            
+            // Always return records in ascending key order
+            Collections.reverse(list);
+        }
+        
+        // Discard the extra record, noting whether there is another page
+        boolean more = list.size() > pageSize;
+        if ( more ) {
+            list.remove( forwards ? pageSize : 0 );
+        }
+        
+        // Build the cursors either side of this page
+        KsdsPageCursor next = null;
+        KsdsPageCursor previous = null;
+        
+        if ( ! list.isEmpty() ) {
+            
+            int first = list.get(0).getPartId();
+            int last = list.get(list.size() - 1).getPartId();
+            
+            // Reading forwards, there is a following page only if we found the extra record,
+            // and a preceding page unless we started from the beginning of the file
+            boolean hasNext = forwards ? more : true;
+            boolean hasPrevious = forwards ? cursor != null : more;
+            
+            if ( hasNext ) {
+                next = new KsdsPageCursor(KsdsPageCursor.Direction.NEXT, last);
+            }
+            if ( hasPrevious ) {
+                previous = new KsdsPageCursor(KsdsPageCursor.Direction.PREVIOUS, first);
+            }
+        }
+        
+        return new KsdsPage(list, next, previous);
+    }
+    
+    /**
+     * Reads up to the specified number of records into the supplied list.
+     * 
+     * When reading backwards, the browse is positioned at the first record
+     * at or after the start key, and READPREV returns that record first.
+     * Any record at or above the exclusive limit is therefore skipped.
+     * A READPREV immediately after the browse is started fails with NOTFND
+     * unless a record with exactly the start key exists, which is not the
+     * case if the boundary record has since been deleted. The browse is
+     * then repositioned with a single READNEXT, after which READPREV
+     * returns the same record and continues backwards from there.
+     * 
+     * @param key the key at which to start the browse.
+     * @param forwards true to read using next(), false to read using previous().
+     * @param partIdLimit when reading backwards, the lowest part ID to exclude.
+     * @param count the maximum number of records to read.
+     * @param list the list to which records are added, in the order read.
+     */
+    private void readPage(byte[] key, boolean forwards, int partIdLimit, int count, List<StockPart> list)
+    {
+        // Holder objects to receive the data
+        RecordHolder rh = new RecordHolder();
+        KeyHolder kh = new KeyHolder();
+        
+        try {
+            // Start the browse of the file
+            KeyedFileBrowse kfb;
+            try {
+                kfb = this.ksds.startBrowse(key, SearchType.GTEQ);
+            }
+            catch (RecordNotFoundException rnfe) {
+                
+                // No records at or after the key
+                if ( forwards ) {
+                    return;
+                }
+                
+                // Reading backwards, so start from the end of the file instead
+                kfb = this.ksds.startBrowse(StockPartKey.keyEnd(), SearchType.GTEQ);
+            }
+            
+            // True once a READPREV has succeeded, or the browse has been repositioned
+            boolean positioned = false;
+            
+            try {
+                // Loop until we have enough records
+                while ( list.size() < count ) {
+                    
+                    // Read a record in the required direction
+                    if ( forwards ) {
+                        kfb.next(rh, kh);
+                    }
+                    else if ( positioned ) {
+                        kfb.previous(rh, kh);
+                    }
+                    else {
+                        try {
+                            kfb.previous(rh, kh);
+                        }
+                        catch (RecordNotFoundException rnfe) {
+                            // No record with exactly the start key - establish a
+                            // position at the following record, which is skipped
+                            kfb.next(rh, kh);
+                        }
+                        positioned = true;
+                    }
+                    
+                    // Skip the record at the browse position if it is beyond the limit
+                    byte[] record = rh.getValue();
+                    if ( ! forwards && StockPartView.partIdOf(record) >= partIdLimit ) {
+                        continue;
+                    }
+                    
+                    list.add( new StockPart(record) );
+                }
+            }
+            catch (EndOfFileException eof) {
+                // Reached the start or end of the file
+            }
+            finally {
+                kfb.end();
+            }
+        }
+        catch (InvalidRequestException ire) {
+            
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable or updateable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+            
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Provides an example of calculating totals over the whole of a VSAM
+     * KSDS dataset, such as the valuation of all stock held.
+     * 
+     * @return the totals for every record in the file.
+     * 
+     * @see #aggregate(int, int)
+     */
+    public StockAggregate aggregate()
+    {
+        return aggregate(0, StockPartKey.MAX_PART_ID);
+    }
+
+    /**
+     * Provides an example of calculating totals over a range of keys in a
+     * VSAM KSDS dataset.
+     * 
+     * The totals are accumulated directly from the bytes of each record as
+     * it is browsed, rather than building a list of {@link StockPart}
+     * objects and decoding every field. Only the stock quantity and unit
+     * price are decoded, into primitive values.
+     * 
+     * @param partIdFrom the lowest part ID in the range.
+     * @param partIdTo the highest part ID in the range, inclusive.
+     * 
+     * @return the totals for the records in the range.
+     */
+    public StockAggregate aggregate(int partIdFrom, int partIdTo)
+    {
+        // Fold each record into the totals as it is read
+        StockAggregate totals = new StockAggregate();
+        browseRange(partIdFrom, partIdTo, totals);
+        return totals;
+    }
+
+    /**
+     * Finds the lowest part ID currently in the file.
+     * 
+     * @return the lowest part ID, or -1 if the file is empty.
+     */
+    public int lowestPartId()
+    {
+        // Position at the start of the file and read forwards
+        return boundaryPartId(StockPartKey.keyZero(), true);
+    }
+
+    /**
+     * Finds the highest part ID currently in the file.
+     * 
+     * @return the highest part ID, or -1 if the file is empty.
+     */
+    public int highestPartId()
+    {
+        // Position at the end of the file and read backwards
+        return boundaryPartId(StockPartKey.keyEnd(), false);
+    }
+
+    /**
+     * Reads a single record at one end of the file.
+     * 
+     * @param key the key at which to start the browse.
+     * @param forwards true to read the next record, false to read the previous record.
+     * 
+     * @return the part ID of the record read, or -1 if there is no such record.
+     */
+    private int boundaryPartId(byte[] key, boolean forwards)
+    {
+        // Holder objects to receive the data
+        RecordHolder rh = new RecordHolder();
+        KeyHolder kh = new KeyHolder();
+        
+        try {
+            // Start the browse of the file
+            KeyedFileBrowse kfb = this.ksds.startBrowse(key, SearchType.GTEQ);
+            
+            try {
+                // Read a single record in the required direction
+                if ( forwards ) {
+                    kfb.next(rh, kh);
+                }
+                else {
+                    kfb.previous(rh, kh);
+                }
+                
+                // Decode the part ID from the record
+                return StockPartView.partIdOf( rh.getValue() );
+            }
+            finally {
+                kfb.end();
+            }
+        }
+        catch (RecordNotFoundException rnfe) {
+            // The file is empty
+            return -1;
+        }
+        catch (EndOfFileException eof) {
+            // The file is empty
+            return -1;
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Writes a columnar snapshot of every record in the KSDS file to a local
+     * file, using a single browse. The snapshot can then be read repeatedly
+     * using {@link StockPartSnapshot} without any further VSAM I/O.
+     * 
+     * @param path the local file to write, which is replaced if it exists.
+     * 
+     * @return the number of records written to the snapshot.
+     * 
+     * @throws IOException if the snapshot could not be written.
+     */
+    public int exportSnapshot(Path path) throws IOException
+    {
+        StockPartSnapshotWriter writer = new StockPartSnapshotWriter(path);
+        
+        // Read every record once, appending each field to its column
+        try {
+            browseRange(0, StockPartKey.MAX_PART_ID, writer);
+        }
+        catch (RuntimeException re) {
+            // Delete the partial columns before propagating the failure
+            writer.discard();
+            throw re;
+        }
+        
+        // Only write the file once the whole browse has succeeded
+        writer.close();
+        int rows = writer.getRowCount();
+        
+        // Report the size of the snapshot
+        String strMsg = "Wrote snapshot of %d records from file %s to %s";
+        Task.getTask().out.println( String.format(strMsg, rows, this.ksds.getName(), path) );
+        return rows;
+    }
+
+    /**
+     * Provides an example of browsing a VSAM KSDS dataset lazily.
+     * 
+     * Unlike {@link #browse(int, int)}, records are not collected into a list.
+     * Each record is read from the file only when the stream requests it, so
+     * the first record is available immediately and the memory used does not
+     * depend on the number of records browsed.
+     * 
+     * The browse is ended when the last record in the file has been read, or
+     * when the stream is closed. Callers that may not consume the whole stream
+     * should close it, typically with a try-with-resources block.
+     * 
+     * @param partIdStart the part ID from which the browse should begin.
+     * 
+     * @return a sequential stream of StockPart objects, in key order.
+     */
+    public Stream<StockPart> browseStream(int partIdStart)
+    {
+        // Iterator which reads from the file on demand
+        KsdsBrowseIterator it = new KsdsBrowseIterator(this.ksds, StockPartKey.toKey(partIdStart));
+        
+        // Wrap as a sequential stream, ending the browse on close
+        Spliterator<StockPart> split = Spliterators.spliteratorUnknownSize(it,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false).onClose(it::close);
+    }
+    
+    /**
+     * Provides a simple example of deleting a single record from a VSAM KSDS file.
+     * 
+     * @param partId the key of the record to locate in the VSAM file.
+     * 
+     * @return a {@link StockPart} instance representing the record in the VSAM file
+     * identified by the specified key before it was deleted.
+     */
+    public StockPart deleteRecord(int partId)
+    {
+        // Encode the part ID directly as a key
+        byte[] keyBytes = StockPartKey.toKey(partId);
+
+        // The record as it stood before deletion
+        StockPart sp;
+        
+        /*
+         * Lock the record for an update.
+         */
+
+        try {
+            // Holder object to receive the data
+            RecordHolder rh = new RecordHolder();
+
+            // Read the record at the specified key and lock
+            this.ksds.readForUpdate(keyBytes, SearchType.EQUAL, rh);
+            
+            // Convert to a StockPart object
+            sp = new StockPart( rh.getValue() );
         }
         catch (RecordNotFoundException rnfe) {
             // Initial read failed - key not found in file
@@ -337,6 +1393,9 @@ public class KsdsExampleCommon extends VsamExampleCommon
             // Delete the selected record
             this.ksds.delete();
             
+            // Drop any cached copy and note the deletion
+            recordDeleted( partId, sp.getByteBuffer() );
+            
             // Return the record as it stood before deletion
             return sp;
         }
@@ -358,4 +1417,210 @@ public class KsdsExampleCommon extends VsamExampleCommon
             throw new RuntimeException(cce);
         }
     }
+
+    /**
+     * Provides an example of deleting a single record from a VSAM KSDS file
+     * in a single request.
+     * 
+     * Unlike {@link #deleteRecord(int)}, the record is not read for update
+     * first, so the record as it stood before deletion is not available.
+     * This saves a file control request and the decoding of the record.
+     * If a supplier index is being maintained, or any listeners are
+     * registered, the record must still be read first.
+     * 
+     * @param partId the key of the record to delete.
+     * 
+     * @return true if the record was deleted, or false if no record with
+     * the specified key was found.
+     */
+    public boolean deleteByKey(int partId)
+    {
+        // Nothing to do if the key cannot be present
+        if ( this.filter != null && !this.filter.mightContain(partId) ) {
+            return false;
+        }
+        
+        // Encode the part ID directly as a key
+        byte[] keyBytes = StockPartKey.toKey(partId);
+        
+        try {
+            if ( this.supplierIndex == null && this.listeners.isEmpty() ) {
+                // Delete the record with the specified key
+                this.ksds.delete(keyBytes);
+                recordDeleted(partId, null);
+            }
+            else {
+                // The index and listeners need the record, so read it first
+                RecordHolder rh = new RecordHolder();
+                this.ksds.readForUpdate(keyBytes, SearchType.EQUAL, rh);
+                this.ksds.delete();
+                recordDeleted( partId, rh.getValue() );
+            }
+            return true;
+        }
+        catch (RecordNotFoundException rnfe) {
+            // No such record - nothing to delete
+            if ( this.filter != null ) {
+                this.filter.noteFalsePositive();
+            }
+            return false;
+        }
+        catch (InvalidRequestException ire) {
+            
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for DELETE to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not deletable
+                String strMsg = "Delete operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+            
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+    }
+    
+    /**
+     * Deletes every record in a range of keys, committing every
+     * {@link #DEFAULT_BATCH_SIZE} records.
+     * 
+     * @param partIdFrom the lowest part ID to delete.
+     * @param partIdTo the highest part ID to delete, inclusive.
+     * 
+     * @return the number of records deleted.
+     * 
+     * @see #deleteRange(int, int, int)
+     */
+    public long deleteRange(int partIdFrom, int partIdTo)
+    {
+        return deleteRange(partIdFrom, partIdTo, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * Provides an example of deleting a range of keys from a VSAM KSDS file
+     * without holding every record lock in a single unit of work.
+     * 
+     * The range is processed in batches. For each batch, a browse collects
+     * the keys of up to <code>batchSize</code> records, each record is then
+     * deleted by key, and the unit of work is committed before the next
+     * batch starts from the key after the last one deleted. The overall
+     * deletion rate is written to the task output.
+     * 
+     * @param partIdFrom the lowest part ID to delete.
+     * @param partIdTo the highest part ID to delete, inclusive.
+     * @param batchSize the number of records to delete between each syncpoint.
+     * 
+     * @return the number of records deleted.
+     */
+    public long deleteRange(int partIdFrom, int partIdTo, int batchSize)
+    {
+        // Validate the batch size
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        
+        // Keys found by the browse for the current batch
+        int[] keys = new int[batchSize];
+        int[] found = new int[1];
+        
+        long deleted = 0;
+        long start = System.nanoTime();
+        int partIdNext = partIdFrom;
+        
+        while ( partIdNext <= partIdTo ) {
+            
+            // Collect the keys for the next batch
+            found[0] = 0;
+            browseRange(partIdNext, partIdTo, batchSize, view -> keys[found[0]++] = view.getPartId());
+            
+            // Delete each record and commit the batch
+            for ( int i = 0; i < found[0]; i++ ) {
+                if ( deleteByKey(keys[i]) ) {
+                    deleted++;
+                }
+            }
+            commitUnitOfWork();
+            
+            // Stop once a batch comes back short, or the key space is exhausted
+            if ( found[0] < batchSize || keys[batchSize - 1] == StockPartKey.MAX_PART_ID ) {
+                break;
+            }
+            partIdNext = keys[batchSize - 1] + 1;
+        }
+        
+        // Report the deletion rate
+        long elapsed = System.nanoTime() - start;
+        double rate = elapsed > 0 ? deleted * 1_000_000_000.0d / elapsed : 0.0d;
+        String strMsg = "Deleted %d records in %d ms (%.0f records/sec)";
+        Task.getTask().out.println( String.format(strMsg, deleted, elapsed / 1_000_000, rate) );
+        
+        return deleted;
+    }
+    
+    /**
+     * Removes the cached copy of a record, if caching is enabled.
+     * 
+     * The entry is removed rather than refreshed, because the change is
+     * not yet committed and may still be backed out.
+     * 
+     * @param partId the part ID of the record that has changed.
+     */
+    private void invalidateCache(int partId)
+    {
+        if ( this.cache != null ) {
+            this.cache.invalidate(partId);
+        }
+    }
+    
+    /**
+     * Removes the cached copy and index entry of a deleted record, notes
+     * the deletion in the key filter, and tells any listeners.
+     * 
+     * @param partId the part ID of the deleted record.
+     * @param before the record before deletion, which is only required if
+     * there is a supplier index or any listeners.
+     */
+    private void recordDeleted(int partId, byte[] before)
+    {
+        invalidateCache(partId);
+        
+        if ( this.filter != null ) {
+            this.filter.noteDeleted();
+        }
+        
+        if ( this.supplierIndex != null ) {
+            this.supplierIndex.remove( StockPartView.supplierOf(before), partId );
+        }
+        
+        for ( KsdsRecordListener l : this.listeners ) {
+            l.deleted(before);
+        }
+    }
+    
+    /**
+     * Pairs a record with its key, so the key is only built once when
+     * sorting records into key sequence.
+     */
+    private static final class KeyedRecord
+    {
+        /**
+         * The key of the record.
+         */
+        private final byte[] key;
+
+        /**
+         * The record to write.
+         */
+        private final StockPart sp;
+
+        private KeyedRecord(byte[] key, StockPart sp)
+        {
+            this.key = key;
+            this.sp = sp;
+        }
+    }
 }
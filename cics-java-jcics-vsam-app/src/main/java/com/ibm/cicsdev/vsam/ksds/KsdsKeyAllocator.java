@@ -0,0 +1,235 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.InvalidQueueIdException;
+import com.ibm.cics.server.ItemErrorException;
+import com.ibm.cics.server.ItemHolder;
+import com.ibm.cics.server.NameResource;
+import com.ibm.cics.server.TSQ;
+import com.ibm.cics.server.TSQType;
+import com.ibm.cicsdev.bean.StockPart;
+import com.ibm.cicsdev.vsam.StockPartHelper;
+import com.ibm.cicsdev.vsam.StockPartKey;
+
+/**
+ * Allocates unique, ascending part IDs for new records in the VSAM KSDS file,
+ * so that adding a record never fails with a duplicate key.
+ *
+ * Part IDs are reserved from a shared high-water mark in blocks. The
+ * high-water mark is the last part ID reserved, held as the first item of a
+ * main temporary storage queue. It is only read and updated while holding a
+ * CICS enqueue on a named resource, so each block is reserved by exactly one
+ * JVM server. Within a JVM server, part IDs are handed out from the current
+ * block using an atomic counter, so no lock is taken until the block is used
+ * up.
+ *
+ * If the queue does not exist, for example after a CICS restart, the
+ * high-water mark is set from the highest key present in the file. Part IDs
+ * reserved but not used, or used by a unit of work which is backed out, are
+ * never reissued, so the file may contain gaps.
+ *
+ * An instance is intended to be held in a static field, so that it is shared
+ * by every CICS task running in the same JVM server. Part IDs are unique only
+ * within a single CICS region. A main temporary storage queue belongs to the
+ * region that wrote it and is not recoverable, so each region sharing the
+ * file keeps its own high-water mark and would hand out the same part IDs,
+ * whatever the scope of the enqueue. The file should therefore be updated
+ * through this allocator by one region only.
+ */
+public class KsdsKeyAllocator
+{
+    /**
+     * Name of the TSQ holding the high-water mark.
+     */
+    private static final String TSQ_NAME = "XMPLKEYS";
+
+    /**
+     * Name of the resource used to serialise updates to the high-water mark.
+     */
+    private static final String RESOURCE_LOCK_NAME = "XMPLKSDS.KEYALLOC";
+
+    /**
+     * Number of part IDs reserved at a time.
+     */
+    private final int blockSize;
+
+    /**
+     * The block of part IDs currently being handed out.
+     */
+    private volatile Block current = new Block(0, 0);
+
+    /**
+     * Creates a new allocator.
+     *
+     * @param blockSize the number of part IDs to reserve at a time.
+     */
+    public KsdsKeyAllocator(int blockSize)
+    {
+        if ( blockSize < 1 ) {
+            throw new IllegalArgumentException("Block size must be at least 1");
+        }
+
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns a part ID which has not been returned before by any allocator
+     * sharing the same high-water mark.
+     *
+     * @return a new part ID.
+     *
+     * @throws IllegalStateException if every part ID has been allocated.
+     */
+    public int nextPartId()
+    {
+        while ( true ) {
+
+            // Try to take the next ID from the current block without locking
+            Block b = this.current;
+            int partId = b.next.getAndIncrement();
+            if ( partId < b.limit ) {
+                return partId;
+            }
+
+            // Block used up - only one thread needs to reserve the next one
+            synchronized (this) {
+                if ( this.current == b ) {
+                    this.current = reserveBlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates a new record, as {@link StockPartHelper#generate()}, but with
+     * a part ID taken from this allocator.
+     *
+     * @return a new {@link StockPart} instance with a unique part ID.
+     */
+    public StockPart generate()
+    {
+        StockPart sp = StockPartHelper.generate();
+        sp.setPartId( nextPartId() );
+        return sp;
+    }
+
+    /**
+     * Reserves a new block of part IDs by advancing the shared high-water mark.
+     *
+     * @return the reserved block.
+     */
+    private Block reserveBlock()
+    {
+        // Create a reference to the TSQ holding the high-water mark
+        TSQ tsq = new TSQ();
+        tsq.setName(TSQ_NAME);
+        tsq.setType(TSQType.MAIN);
+
+        // Create a named synchronization resource
+        NameResource lock = new NameResource();
+        lock.setName(RESOURCE_LOCK_NAME);
+
+        try {
+            // Wait for exclusive access to the high-water mark
+            lock.enqueue();
+
+            try {
+                // Read the current high-water mark, if there is one
+                int start = readHighWaterMark(tsq);
+                boolean exists = start >= 0;
+
+                // Otherwise continue from the highest key in the file
+                if ( !exists ) {
+                    start = Math.max( 1, new KsdsExampleCommon().highestPartId() + 1 );
+                }
+
+                // Check there is anything left to allocate
+                if ( start > StockPartKey.MAX_PART_ID ) {
+                    throw new IllegalStateException("All part IDs have been allocated");
+                }
+
+                // Reserve the block, without going beyond the largest key
+                int limit = (int) Math.min( (long) start + this.blockSize, StockPartKey.MAX_PART_ID + 1L );
+                byte[] item = StockPartKey.toKey(limit - 1);
+
+                // Store the new high-water mark
+                if ( exists ) {
+                    tsq.rewriteItem(1, item);
+                }
+                else {
+                    tsq.writeItem(item);
+                }
+
+                return new Block(start, limit);
+            }
+            finally {
+                // Release the lock inside the finally block for correct error-handling
+                lock.dequeue();
+            }
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Reads the high-water mark from the first item in the queue.
+     *
+     * @return the next part ID to reserve, or -1 if the queue has no items.
+     */
+    private static int readHighWaterMark(TSQ tsq) throws CicsConditionException
+    {
+        // Holder to receive data from TSQ
+        ItemHolder holder = new ItemHolder();
+
+        try {
+            tsq.readItem(1, holder);
+        }
+        catch (InvalidQueueIdException qe) {
+            // QIDERR - queue does not exist yet
+            return -1;
+        }
+        catch (ItemErrorException iee) {
+            // ITEMERR - queue exists but has no items
+            return -1;
+        }
+
+        // The high-water mark is held in the same form as a key
+        return StockPartKey.decode( holder.getValue() ) + 1;
+    }
+
+    /**
+     * A range of part IDs reserved by this JVM server.
+     */
+    private static final class Block
+    {
+        /**
+         * The next part ID to hand out.
+         */
+        private final AtomicInteger next;
+
+        /**
+         * The first part ID beyond this block.
+         */
+        private final int limit;
+
+        private Block(int start, int limit)
+        {
+            this.next = new AtomicInteger(start);
+            this.limit = limit;
+        }
+    }
+}
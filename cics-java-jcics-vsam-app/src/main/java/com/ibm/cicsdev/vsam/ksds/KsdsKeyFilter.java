@@ -0,0 +1,308 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ibm.cicsdev.vsam.StockPartKey;
+
+/**
+ * An in-memory Bloom filter of the part IDs present in the VSAM KSDS file,
+ * used to answer "definitely absent" without any file I/O.
+ *
+ * An instance is intended to be held in a static field, loaded once by
+ * browsing the file with {@link #load()}, and passed to
+ * {@link KsdsExampleCommon#KsdsExampleCommon(KsdsRecordCache, KsdsKeyFilter)}
+ * so that records added through that class are included. All methods are
+ * safe to call from concurrent tasks.
+ *
+ * A Bloom filter can only have keys added. A record added and then backed out
+ * leaves a key in the filter which is not in the file, and a deleted record
+ * cannot be removed, so both simply increase the false positive rate. The
+ * number of deletions is counted so that the estimated rate allows for them,
+ * and the filter can be reloaded once the rate becomes too high.
+ *
+ * Records added to the file by any other program are not seen by the filter,
+ * which would then wrongly report them as absent. The filter must only be
+ * used where this class is the only writer of the file.
+ */
+public class KsdsKeyFilter
+{
+    /**
+     * The bit array, held as 64-bit words which can be updated atomically.
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * Number of bits in the filter.
+     */
+    private final int bitCount;
+
+    /**
+     * Number of bits set for each key.
+     */
+    private final int hashCount;
+
+    /**
+     * Number of keys added which set at least one new bit.
+     */
+    private final AtomicLong keys = new AtomicLong();
+
+    /**
+     * Number of deleted keys which remain in the filter.
+     */
+    private final AtomicLong deleted = new AtomicLong();
+
+    /**
+     * Number of keys reported as definitely absent.
+     */
+    private final AtomicLong negatives = new AtomicLong();
+
+    /**
+     * Number of keys reported as possibly present which were then
+     * not found in the file.
+     */
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * Creates a new, empty filter sized for the supplied number of keys.
+     *
+     * @param expectedKeys the number of keys the file is expected to hold.
+     * @param falsePositiveRate the acceptable probability of a missing key
+     * being reported as possibly present, between 0 and 1.
+     */
+    public KsdsKeyFilter(int expectedKeys, double falsePositiveRate)
+    {
+        // Validate the parameters
+        if ( expectedKeys < 1 ) {
+            throw new IllegalArgumentException("Expected key count must be at least 1");
+        }
+        if ( falsePositiveRate <= 0.0d || falsePositiveRate >= 1.0d ) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+
+        // Optimal size is -n ln(p) / (ln 2)^2 bits, rounded up to whole words
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil( -expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2) );
+        int words = (int) Math.min( (m + 63) / 64, Integer.MAX_VALUE / 64 );
+
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64;
+
+        // Optimal number of hashes is (m / n) ln 2
+        this.hashCount = Math.max( 1, (int) Math.round((double) this.bitCount / expectedKeys * ln2) );
+    }
+
+    /**
+     * Clears the filter and adds every key currently in the file, using a
+     * single browse of the whole key space.
+     *
+     * This should be called before the filter is used, while no other task
+     * is adding records to the file.
+     *
+     * @return the number of keys added.
+     */
+    public int load()
+    {
+        // Start from an empty filter
+        for ( int i = 0; i < this.bits.length(); i++ ) {
+            this.bits.set(i, 0L);
+        }
+        this.keys.set(0);
+        this.deleted.set(0);
+        this.negatives.set(0);
+        this.falsePositives.set(0);
+
+        // Browse the file without using the filter itself
+        KsdsExampleCommon ex = new KsdsExampleCommon();
+        return ex.browseRange( 0, StockPartKey.MAX_PART_ID, view -> add(view.getPartId()) );
+    }
+
+    /**
+     * Adds a key to the filter.
+     *
+     * @param partId the part ID to add.
+     */
+    public void add(int partId)
+    {
+        long h = mix(partId);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        boolean changed = false;
+
+        for ( int i = 0; i < this.hashCount; i++ ) {
+            int bit = index(h1 + i * h2);
+            long mask = 1L << bit;
+
+            // Set the bit, noting whether it was previously clear
+            long old = this.bits.getAndAccumulate(bit >>> 6, mask, (a, b) -> a | b);
+            changed |= (old & mask) == 0;
+        }
+
+        // A key which set no new bits was most likely already present
+        if ( changed ) {
+            this.keys.incrementAndGet();
+        }
+    }
+
+    /**
+     * Tests whether a key may be present in the file. A result of
+     * <code>false</code> means the key is definitely not present.
+     *
+     * A <code>false</code> result is counted towards the observed false
+     * positive rate, so this method should only be used where a
+     * <code>true</code> result is checked by reading the file, and
+     * {@link #noteFalsePositive()} is called if the key is not found.
+     * Otherwise use {@link #mightContainUncounted(int)}.
+     *
+     * @param partId the part ID to test.
+     *
+     * @return false if the key is definitely absent, true if it may be present.
+     */
+    public boolean mightContain(int partId)
+    {
+        if ( mightContainUncounted(partId) ) {
+            return true;
+        }
+
+        this.negatives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Tests whether a key may be present in the file, as
+     * {@link #mightContain(int)}, without updating the counts used for
+     * the observed false positive rate.
+     *
+     * @param partId the part ID to test.
+     *
+     * @return false if the key is definitely absent, true if it may be present.
+     */
+    public boolean mightContainUncounted(int partId)
+    {
+        long h = mix(partId);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+
+        for ( int i = 0; i < this.hashCount; i++ ) {
+            int bit = index(h1 + i * h2);
+            if ( (this.bits.get(bit >>> 6) & (1L << bit)) == 0 ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Notes that a key has been deleted from the file. The key remains in
+     * the filter, and is counted when estimating the false positive rate.
+     */
+    public void noteDeleted()
+    {
+        this.deleted.incrementAndGet();
+    }
+
+    /**
+     * Notes that a key reported as possibly present was not found in the file.
+     */
+    public void noteFalsePositive()
+    {
+        this.falsePositives.incrementAndGet();
+    }
+
+    /**
+     * Estimates the probability that a key which is not in the file is
+     * reported as possibly present, based on the number of keys added.
+     * Deleted keys are treated as present, as they remain in the filter.
+     *
+     * @return the estimated false positive rate, between 0 and 1.
+     */
+    public double getExpectedFalsePositiveRate()
+    {
+        // (1 - e^(-kn/m))^k
+        double fill = 1.0d - Math.exp( -(double) this.hashCount * this.keys.get() / this.bitCount );
+        return Math.pow(fill, this.hashCount);
+    }
+
+    /**
+     * Returns the proportion of absent keys which have been reported as
+     * possibly present, as noted by {@link #noteFalsePositive()}.
+     *
+     * @return the observed false positive rate, or 0 if no absent keys
+     * have been tested.
+     */
+    public double getObservedFalsePositiveRate()
+    {
+        long fp = this.falsePositives.get();
+        long absent = fp + this.negatives.get();
+        return absent == 0 ? 0.0d : (double) fp / absent;
+    }
+
+    /**
+     * @return the approximate number of keys added to the filter.
+     */
+    public long getKeyCount()
+    {
+        return this.keys.get();
+    }
+
+    /**
+     * @return the number of deleted keys which remain in the filter.
+     */
+    public long getDeletedCount()
+    {
+        return this.deleted.get();
+    }
+
+    /**
+     * @return the number of file reads avoided by reporting a key
+     * as definitely absent.
+     */
+    public long getNegativeCount()
+    {
+        return this.negatives.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        String strFmt = "bits=%d, hashes=%d, keys=%d, deleted=%d, absent=%d, fpp expected=%.4f observed=%.4f";
+        return String.format(strFmt, this.bitCount, this.hashCount, getKeyCount(), getDeletedCount(),
+                getNegativeCount(), getExpectedFalsePositiveRate(), getObservedFalsePositiveRate());
+    }
+
+    /**
+     * Maps a combined hash onto a bit index.
+     */
+    private int index(int combined)
+    {
+        // Flip negative values rather than taking the absolute value,
+        // which would leave Integer.MIN_VALUE negative
+        return (combined < 0 ? ~combined : combined) % this.bitCount;
+    }
+
+    /**
+     * Spreads the bits of a part ID across a 64-bit hash, using the
+     * finalisation step of MurmurHash3.
+     */
+    private static long mix(int partId)
+    {
+        long h = partId;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,131 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long records in a VSAM KSDS file are held for update, between
+ * the read for update and the matching rewrite or unlock.
+ *
+ * A single instance is shared by every CICS task running in the same JVM
+ * server, and is available from {@link KsdsExampleCommon#getLockStatistics()}.
+ * All methods are safe to call from concurrent tasks.
+ *
+ * For a recoverable file, CICS holds the record lock until the end of the
+ * unit of work rather than until the rewrite completes. These figures then
+ * show the time spent between read and rewrite by this application, which is
+ * the part of the hold time that the application controls.
+ */
+public final class KsdsLockStatistics
+{
+    /**
+     * Number of read-modify-write cycles recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Total time for which records were held, in nanoseconds.
+     */
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * Longest time for which a record was held, in nanoseconds.
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Part ID of the record held for the longest time.
+     */
+    private volatile int maxPartId = -1;
+
+    KsdsLockStatistics()
+    {
+    }
+
+    /**
+     * Records a single read-modify-write cycle.
+     *
+     * @param partId the part ID of the record which was held.
+     * @param nanos the time for which it was held, in nanoseconds.
+     */
+    void record(int partId, long nanos)
+    {
+        this.count.incrementAndGet();
+        this.totalNanos.addAndGet(nanos);
+
+        // Only remember the part ID if this is a new longest hold
+        if ( this.maxNanos.getAndAccumulate(nanos, Math::max) < nanos ) {
+            this.maxPartId = partId;
+        }
+    }
+
+    /**
+     * Clears all the figures recorded so far.
+     */
+    public void reset()
+    {
+        this.count.set(0);
+        this.totalNanos.set(0);
+        this.maxNanos.set(0);
+        this.maxPartId = -1;
+    }
+
+    /**
+     * @return the number of read-modify-write cycles recorded.
+     */
+    public long getCount()
+    {
+        return this.count.get();
+    }
+
+    /**
+     * @return the total time for which records were held, in nanoseconds.
+     */
+    public long getTotalNanos()
+    {
+        return this.totalNanos.get();
+    }
+
+    /**
+     * @return the mean time for which a record was held, in nanoseconds,
+     * or 0 if nothing has been recorded.
+     */
+    public long getMeanNanos()
+    {
+        long n = this.count.get();
+        return n == 0 ? 0 : this.totalNanos.get() / n;
+    }
+
+    /**
+     * @return the longest time for which a record was held, in nanoseconds.
+     */
+    public long getMaxNanos()
+    {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * @return the part ID of the record held for the longest time,
+     * or -1 if nothing has been recorded.
+     */
+    public int getMaxPartId()
+    {
+        return this.maxPartId;
+    }
+
+    @Override
+    public String toString()
+    {
+        String strFmt = "updates=%d, mean hold=%d us, max hold=%d us (part 0x%08X)";
+        return String.format(strFmt, getCount(), getMeanNanos() / 1_000, getMaxNanos() / 1_000, getMaxPartId());
+    }
+}
@@ -0,0 +1,79 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.ibm.cicsdev.bean.StockPart;
+
+/**
+ * A single page of records read from a VSAM KSDS file by
+ * {@link KsdsExampleCommon#browsePage(KsdsPageCursor, int)}, together with
+ * the cursors needed to read the adjacent pages.
+ */
+public class KsdsPage
+{
+    /**
+     * The records in this page, in ascending key order.
+     */
+    private final List<StockPart> records;
+
+    /**
+     * Cursor for the following page, or <code>null</code> if there is none.
+     */
+    private final KsdsPageCursor next;
+
+    /**
+     * Cursor for the preceding page, or <code>null</code> if there is none.
+     */
+    private final KsdsPageCursor previous;
+
+    /**
+     * Creates a new page.
+     *
+     * @param records the records in the page, in ascending key order.
+     * @param next the cursor for the following page, or <code>null</code>.
+     * @param previous the cursor for the preceding page, or <code>null</code>.
+     */
+    KsdsPage(List<StockPart> records, KsdsPageCursor next, KsdsPageCursor previous)
+    {
+        this.records = Collections.unmodifiableList(records);
+        this.next = next;
+        this.previous = previous;
+    }
+
+    /**
+     * @return the records in this page, in ascending key order.
+     */
+    public List<StockPart> getRecords()
+    {
+        return this.records;
+    }
+
+    /**
+     * @return the cursor for the following page, or <code>null</code>
+     * if this is the last page.
+     */
+    public KsdsPageCursor getNext()
+    {
+        return this.next;
+    }
+
+    /**
+     * @return the cursor for the preceding page, or <code>null</code>
+     * if this is the first page.
+     */
+    public KsdsPageCursor getPrevious()
+    {
+        return this.previous;
+    }
+}
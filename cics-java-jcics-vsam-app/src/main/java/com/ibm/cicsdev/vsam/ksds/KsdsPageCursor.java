@@ -0,0 +1,156 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.ibm.cicsdev.vsam.StockPartKey;
+
+/**
+ * Identifies a position from which to read a page of records from a VSAM
+ * KSDS file, using {@link KsdsExampleCommon#browsePage(KsdsPageCursor, int)}.
+ *
+ * A cursor holds a boundary key and a direction. A {@link Direction#NEXT}
+ * cursor reads the records after its key, and a {@link Direction#PREVIOUS}
+ * cursor reads the records before its key. Because the page is located by
+ * key rather than by counting records from the start of the file, every
+ * page costs the same to read, however deep into the file it is.
+ *
+ * A cursor can be converted to an opaque string with {@link #toToken()}, for
+ * example to be held by a user interface between requests, and converted
+ * back with {@link #fromToken(String)}.
+ */
+public final class KsdsPageCursor
+{
+    /**
+     * The direction in which to read from the boundary key.
+     */
+    public enum Direction
+    {
+        /**
+         * Read the records with keys higher than the boundary key.
+         */
+        NEXT('N'),
+
+        /**
+         * Read the records with keys lower than the boundary key.
+         */
+        PREVIOUS('P');
+
+        /**
+         * Character used to represent this direction in a token.
+         */
+        private final char code;
+
+        private Direction(char code)
+        {
+            this.code = code;
+        }
+    }
+
+    /**
+     * The direction in which to read.
+     */
+    private final Direction direction;
+
+    /**
+     * The boundary key, which is not itself included in the page.
+     */
+    private final int partId;
+
+    /**
+     * Creates a new cursor.
+     *
+     * @param direction the direction in which to read.
+     * @param partId the part ID of the boundary key.
+     */
+    public KsdsPageCursor(Direction direction, int partId)
+    {
+        if ( partId < 0 || partId > StockPartKey.MAX_PART_ID ) {
+            throw new IllegalArgumentException("Part ID out of range: " + partId);
+        }
+
+        this.direction = direction;
+        this.partId = partId;
+    }
+
+    /**
+     * @return the direction in which to read.
+     */
+    public Direction getDirection()
+    {
+        return this.direction;
+    }
+
+    /**
+     * @return the part ID of the boundary key.
+     */
+    public int getPartId()
+    {
+        return this.partId;
+    }
+
+    /**
+     * Converts this cursor to an opaque string.
+     *
+     * @return a token which can be passed to {@link #fromToken(String)}.
+     */
+    public String toToken()
+    {
+        String raw = String.format("%c%08d", this.direction.code, this.partId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( raw.getBytes(StandardCharsets.US_ASCII) );
+    }
+
+    /**
+     * Converts a token created by {@link #toToken()} back to a cursor.
+     *
+     * @param token the token to convert.
+     *
+     * @return the cursor represented by the token.
+     *
+     * @throws IllegalArgumentException if the token is not valid.
+     */
+    public static KsdsPageCursor fromToken(String token)
+    {
+        // Base64 decoding rejects invalid characters with IllegalArgumentException
+        String raw = new String( Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII );
+
+        // Expect a direction character followed by eight digits
+        if ( raw.length() != 1 + StockPartKey.LENGTH ) {
+            throw new IllegalArgumentException("Invalid page cursor: " + token);
+        }
+
+        // Find the direction
+        Direction direction = null;
+        for ( Direction d : Direction.values() ) {
+            if ( d.code == raw.charAt(0) ) {
+                direction = d;
+            }
+        }
+        if ( direction == null ) {
+            throw new IllegalArgumentException("Invalid page cursor: " + token);
+        }
+
+        try {
+            return new KsdsPageCursor( direction, Integer.parseInt(raw.substring(1)) );
+        }
+        catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid page cursor: " + token, nfe);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s 0x%08X", this.direction, this.partId);
+    }
+}
@@ -0,0 +1,267 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+import com.ibm.cics.server.CICSExecutorService;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.vsam.StockPartKey;
+import com.ibm.cicsdev.vsam.StockPartView;
+
+/**
+ * Example of scanning a whole VSAM KSDS file using several concurrent browses.
+ *
+ * The part ID key space is divided into a number of contiguous ranges, and
+ * each range is browsed in its own CICS task using
+ * {@link CICSExecutorService#runAsCICS(java.util.concurrent.Callable)}. Every
+ * task folds its records into a separate accumulator, so no locking is needed
+ * while records are processed. Because the ranges are disjoint and in key
+ * order, returning the accumulators in range order gives an ordered merge of
+ * the results.
+ *
+ * The ranges either divide the whole key space evenly, or divide the range
+ * between the lowest and highest keys actually present in the file. Neither
+ * approach accounts for uneven key distribution within that range.
+ *
+ * {@link #scanSequential(Supplier, BiConsumer)} performs the same work as a
+ * single browse in the calling task, to provide a baseline for comparison.
+ * Both methods write their elapsed time to the task output.
+ */
+public class KsdsPartitionedScan
+{
+    /**
+     * Number of ranges to browse concurrently.
+     */
+    private final int partitions;
+
+    /**
+     * True to divide the range of keys present in the file, false to
+     * divide the whole key space.
+     */
+    private final boolean sampleBounds;
+
+    /**
+     * Creates a scan which divides the file into the supplied number of ranges.
+     *
+     * @param partitions the number of ranges to browse concurrently.
+     * @param sampleBounds true to read the lowest and highest keys in the file
+     * and divide that range, false to divide the whole key space evenly.
+     */
+    public KsdsPartitionedScan(int partitions, boolean sampleBounds)
+    {
+        if ( partitions < 1 ) {
+            throw new IllegalArgumentException("Partition count must be at least 1");
+        }
+
+        this.partitions = partitions;
+        this.sampleBounds = sampleBounds;
+    }
+
+    /**
+     * Scans the file concurrently, returning one accumulator per range.
+     *
+     * @param <A> the type of the accumulator.
+     * @param supplier creates an empty accumulator for each range.
+     * @param accumulator folds a record into an accumulator. The view is
+     * reused, so values must be copied if they are to be kept.
+     *
+     * @return the accumulator for each range, in ascending key order.
+     */
+    public <A> List<A> scan(Supplier<A> supplier, BiConsumer<A, ? super StockPartView> accumulator)
+    {
+        // Work out which key ranges to browse
+        List<int[]> ranges = ranges();
+
+        long start = System.nanoTime();
+
+        // Start a CICS task to browse each range
+        List<Future<Partition<A>>> futures = new ArrayList<>(ranges.size());
+        for ( int[] range : ranges ) {
+            futures.add( CICSExecutorService.runAsCICS( () -> browse(range[0], range[1], supplier, accumulator) ) );
+        }
+
+        // Wait for each task in turn, keeping the results in key order
+        List<A> results = new ArrayList<>(futures.size());
+        long records = 0;
+        for ( Future<Partition<A>> future : futures ) {
+
+            Partition<A> p = waitFor(future);
+            results.add(p.result);
+            records += p.records;
+
+            // Report the throughput of this range
+            String strMsg = "Range %08d-%08d: %d records in %d ms";
+            Task.getTask().out.println( String.format(strMsg, p.from, p.to, p.records, p.elapsed / 1_000_000) );
+        }
+
+        // Report the overall throughput
+        report("Partitioned", ranges.size(), records, System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * Scans the file concurrently, combining the accumulators for each range
+     * into a single result.
+     *
+     * @param <A> the type of the accumulator.
+     * @param supplier creates an empty accumulator for each range.
+     * @param accumulator folds a record into an accumulator.
+     * @param combiner combines two accumulators, the second of which holds
+     * the higher keys.
+     *
+     * @return the combined result.
+     */
+    public <A> A scan(Supplier<A> supplier, BiConsumer<A, ? super StockPartView> accumulator,
+            BinaryOperator<A> combiner)
+    {
+        // Combine the results in key order
+        A combined = supplier.get();
+        for ( A result : scan(supplier, accumulator) ) {
+            combined = combiner.apply(combined, result);
+        }
+        return combined;
+    }
+
+    /**
+     * Scans the whole file as a single browse in the calling task. This
+     * provides a baseline against which to measure the partitioned scan.
+     *
+     * @param <A> the type of the accumulator.
+     * @param supplier creates the accumulator.
+     * @param accumulator folds a record into the accumulator.
+     *
+     * @return the accumulator.
+     */
+    public <A> A scanSequential(Supplier<A> supplier, BiConsumer<A, ? super StockPartView> accumulator)
+    {
+        long start = System.nanoTime();
+
+        // Browse the whole key space
+        Partition<A> p = browse(0, StockPartKey.MAX_PART_ID, supplier, accumulator);
+
+        report("Sequential", 1, p.records, System.nanoTime() - start);
+        return p.result;
+    }
+
+    /**
+     * Divides the key space into ranges.
+     *
+     * @return a list of inclusive [from, to] part ID ranges, in key order.
+     */
+    private List<int[]> ranges()
+    {
+        List<int[]> ranges = new ArrayList<>(this.partitions);
+
+        // Default to the whole key space
+        long lo = 0;
+        long hi = StockPartKey.MAX_PART_ID;
+
+        // Narrow to the keys actually present in the file if required
+        if ( this.sampleBounds ) {
+            KsdsExampleCommon ex = new KsdsExampleCommon();
+            lo = ex.lowestPartId();
+
+            // Nothing to do for an empty file
+            if ( lo < 0 ) {
+                return ranges;
+            }
+            hi = ex.highestPartId();
+        }
+
+        // Never create more ranges than there are keys
+        long span = hi - lo + 1;
+        int n = (int) Math.min(this.partitions, span);
+
+        // Divide the range as evenly as possible
+        for ( int i = 0; i < n; i++ ) {
+            int from = (int) (lo + span * i / n);
+            int to = (int) (lo + span * (i + 1) / n - 1);
+            ranges.add(new int[] { from, to });
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Browses a single range of keys. Runs in its own CICS task when called
+     * from {@link #scan(Supplier, BiConsumer)}.
+     */
+    private static <A> Partition<A> browse(int from, int to, Supplier<A> supplier,
+            BiConsumer<A, ? super StockPartView> accumulator)
+    {
+        long start = System.nanoTime();
+
+        // Each task needs its own file instance
+        KsdsExampleCommon ex = new KsdsExampleCommon();
+        A result = supplier.get();
+        int records = ex.browseRange(from, to, view -> accumulator.accept(result, view));
+
+        return new Partition<>(from, to, result, records, System.nanoTime() - start);
+    }
+
+    /**
+     * Waits for a child task to complete, propagating any failure.
+     */
+    private static <T> T waitFor(Future<T> future)
+    {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ee) {
+            // The child task failed - propagate the cause back to caller
+            throw new RuntimeException(ee.getCause());
+        }
+        catch (InterruptedException ie) {
+            // Restore the interrupt and give up
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        }
+    }
+
+    /**
+     * Writes the throughput of a scan to the task output.
+     */
+    private static void report(String type, int ranges, long records, long elapsed)
+    {
+        double rate = elapsed > 0 ? records * 1_000_000_000.0d / elapsed : 0.0d;
+
+        String strMsg = "%s scan of %d range(s): %d records in %d ms (%.0f records/sec)";
+        Task.getTask().out.println( String.format(strMsg, type, ranges, records, elapsed / 1_000_000, rate) );
+    }
+
+    /**
+     * The outcome of browsing a single range.
+     */
+    private static final class Partition<A>
+    {
+        private final int from;
+        private final int to;
+        private final A result;
+        private final int records;
+        private final long elapsed;
+
+        private Partition(int from, int to, A result, int records, long elapsed)
+        {
+            this.from = from;
+            this.to = to;
+            this.result = result;
+            this.records = records;
+            this.elapsed = elapsed;
+        }
+    }
+}
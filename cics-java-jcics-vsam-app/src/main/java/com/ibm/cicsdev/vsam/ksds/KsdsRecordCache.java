@@ -0,0 +1,257 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least-recently-used cache of KSDS records, keyed by part ID.
+ *
+ * An instance is intended to be held in a static field, so that it is shared
+ * by every CICS task running in the same JVM server. All methods are safe to
+ * call from concurrent tasks.
+ *
+ * Records are held as byte arrays, and a copy is taken both when a record is
+ * stored and when it is returned, so that no caller can modify the cached
+ * data. Entries expire once they are older than the configured time to live.
+ *
+ * The cache is not part of the CICS unit of work. Changes made through
+ * {@link KsdsExampleCommon} invalidate the affected entry, but a record that
+ * is updated by another program, or re-read by another task before an update
+ * is committed, may be returned until its entry expires. The time to live
+ * therefore bounds how stale a cached record can become.
+ */
+public class KsdsRecordCache
+{
+    /**
+     * The cached records, in access order so that the eldest entry
+     * is always the least recently used.
+     */
+    private final LinkedHashMap<Integer, Entry> map;
+
+    /**
+     * Maximum number of entries held before the least recently used
+     * entry is evicted.
+     */
+    private final int maxEntries;
+
+    /**
+     * Time to live for each entry, in nanoseconds.
+     */
+    private final long ttlNanos;
+
+    /**
+     * Number of reads satisfied from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of reads which had to go to the file.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Number of entries removed to make room for new entries.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Number of entries removed because they had expired.
+     */
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param maxEntries the maximum number of records to hold.
+     * @param ttlMillis the time in milliseconds after which a cached
+     * record is no longer returned.
+     */
+    public KsdsRecordCache(int maxEntries, long ttlMillis)
+    {
+        if ( maxEntries < 1 ) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        if ( ttlMillis < 1 ) {
+            throw new IllegalArgumentException("Time to live must be at least 1 ms");
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+
+        // Access-ordered map which evicts the least recently used entry when full
+        this.map = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest)
+            {
+                boolean evict = size() > KsdsRecordCache.this.maxEntries;
+                if ( evict ) {
+                    KsdsRecordCache.this.evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the cached record for the supplied part ID.
+     *
+     * @param partId the part ID of the record.
+     *
+     * @return a copy of the record, or <code>null</code> if the record
+     * is not in the cache or has expired.
+     */
+    public byte[] get(int partId)
+    {
+        byte[] record = null;
+
+        synchronized (this.map) {
+
+            Entry e = this.map.get(partId);
+            if ( e != null ) {
+
+                // Discard the entry if it has outlived its time to live
+                if ( System.nanoTime() - e.loaded > this.ttlNanos ) {
+                    this.map.remove(partId);
+                    this.expirations.incrementAndGet();
+                }
+                else {
+                    record = e.record;
+                }
+            }
+        }
+
+        // Update the statistics and copy outside of the lock
+        if ( record == null ) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        this.hits.incrementAndGet();
+        return record.clone();
+    }
+
+    /**
+     * Stores a copy of the supplied record in the cache, replacing any
+     * existing entry for the same part ID.
+     *
+     * @param partId the part ID of the record.
+     * @param record the record read from the file.
+     */
+    public void put(int partId, byte[] record)
+    {
+        Entry e = new Entry(record.clone(), System.nanoTime());
+
+        synchronized (this.map) {
+            this.map.put(partId, e);
+        }
+    }
+
+    /**
+     * Removes the entry for the supplied part ID, if one exists.
+     *
+     * @param partId the part ID of the record.
+     */
+    public void invalidate(int partId)
+    {
+        synchronized (this.map) {
+            this.map.remove(partId);
+        }
+    }
+
+    /**
+     * Removes all entries from the cache. The statistics are not reset.
+     */
+    public void clear()
+    {
+        synchronized (this.map) {
+            this.map.clear();
+        }
+    }
+
+    /**
+     * @return the number of entries currently held, including any which
+     * have expired but not yet been removed.
+     */
+    public int size()
+    {
+        synchronized (this.map) {
+            return this.map.size();
+        }
+    }
+
+    /**
+     * @return the number of reads satisfied from the cache.
+     */
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of reads which were not satisfied from the cache.
+     */
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of entries evicted to make room for new entries.
+     */
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return the number of entries removed because they had expired.
+     */
+    public long getExpirations()
+    {
+        return this.expirations.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        String strFmt = "KsdsRecordCache[size=%d/%d, hits=%d, misses=%d, evictions=%d, expirations=%d]";
+        return String.format(strFmt, size(), this.maxEntries, getHits(), getMisses(),
+                getEvictions(), getExpirations());
+    }
+
+    /**
+     * A single cached record and the time at which it was loaded.
+     */
+    private static final class Entry
+    {
+        /**
+         * The cached record.
+         */
+        private final byte[] record;
+
+        /**
+         * Value of {@link System#nanoTime()} when the record was stored.
+         */
+        private final long loaded;
+
+        private Entry(byte[] record, long loaded)
+        {
+            this.record = record;
+            this.loaded = loaded;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+/**
+ * Receives notification of each change made to the VSAM KSDS file through
+ * {@link KsdsExampleCommon}, once the change has been made to the file.
+ *
+ * A listener is registered using
+ * {@link KsdsExampleCommon#addListener(KsdsRecordListener)}, and is called in
+ * the task which made the change, before the unit of work is committed. Any
+ * runtime exception thrown by a listener is propagated to the caller, so that
+ * the unit of work can be backed out.
+ *
+ * The record arrays passed to a listener must not be modified, and must be
+ * copied if they are to be kept after the method returns.
+ */
+public interface KsdsRecordListener
+{
+    /**
+     * Called after a record has been added to the file.
+     *
+     * @param record the record which was added.
+     */
+    void added(byte[] record);
+
+    /**
+     * Called after a record in the file has been rewritten.
+     *
+     * @param before the record as it was read for update.
+     * @param after the record as it was rewritten.
+     */
+    void updated(byte[] before, byte[] after);
+
+    /**
+     * Called after a record has been deleted from the file.
+     *
+     * @param before the record as it stood before deletion.
+     */
+    void deleted(byte[] before);
+}
@@ -0,0 +1,281 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.ksds;
+
+import java.util.Arrays;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.DuplicateRecordException;
+import com.ibm.cics.server.EndOfFileException;
+import com.ibm.cics.server.InvalidRequestException;
+import com.ibm.cics.server.KSDS;
+import com.ibm.cics.server.KeyHolder;
+import com.ibm.cics.server.KeyedFileBrowse;
+import com.ibm.cics.server.RecordHolder;
+import com.ibm.cics.server.RecordNotFoundException;
+import com.ibm.cics.server.SearchType;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.vsam.StockPartKey;
+
+/**
+ * A secondary index of the VSAM KSDS stock part file by supplier, held in a
+ * companion KSDS file.
+ *
+ * Each record in the index file is 16 bytes long and consists only of its
+ * key, which is the supplier followed by the part ID, both in the same
+ * 8-digit zoned decimal form as the key of the stock part file. All the parts
+ * from one supplier are therefore adjacent in the index, and can be found
+ * with a generic browse on the first 8 bytes of the key.
+ *
+ * The index is maintained by {@link KsdsExampleCommon} when an instance is
+ * passed to its constructor. Each index update is made by the same task as
+ * the change to the stock part file, so the two files are committed or
+ * backed out together, provided both are defined as recoverable.
+ */
+public class KsdsSupplierIndex
+{
+    /**
+     * Name of the file resource to use.
+     */
+    private static final String FILE_NAME = "XMPLKSUP";
+
+    /**
+     * Length of an index key, and so of an index record.
+     */
+    public static final int KEY_LENGTH = 2 * StockPartKey.LENGTH;
+
+    /**
+     * A field to hold a reference to the index file.
+     */
+    private final KSDS ksds;
+
+    /**
+     * Constructor to initialise the reference to the index file.
+     */
+    public KsdsSupplierIndex()
+    {
+        // Create a new KSDS instance and initialise
+        this.ksds = new KSDS();
+        this.ksds.setName(FILE_NAME);
+    }
+
+    /**
+     * Adds an entry to the index. An entry which already exists is
+     * left unchanged.
+     *
+     * @param supplier the supplier of the part.
+     * @param partId the part ID.
+     */
+    public void add(int supplier, int partId)
+    {
+        byte[] key = toKey(supplier, partId);
+
+        try {
+            // The record is just the key
+            this.ksds.write(key, key);
+        }
+        catch (DuplicateRecordException dre) {
+            // Already indexed - nothing to do
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for WRITE to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not addable
+                String strMsg = "Add operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Removes an entry from the index. An entry which does not exist
+     * is ignored.
+     *
+     * @param supplier the supplier of the part.
+     * @param partId the part ID.
+     */
+    public void remove(int supplier, int partId)
+    {
+        try {
+            // Delete the entry with the specified key
+            this.ksds.delete( toKey(supplier, partId) );
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Not indexed - nothing to do
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for DELETE to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not deletable
+                String strMsg = "Delete operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Finds the part IDs of every part from the specified supplier, using a
+     * generic browse of the index. Only the index entries for that supplier
+     * are read, however large the file is.
+     *
+     * @param supplier the supplier to find.
+     *
+     * @return the part IDs, in ascending order.
+     */
+    public int[] partIds(int supplier)
+    {
+        // Start from the first possible entry for this supplier
+        byte[] key = toKey(supplier, 0);
+
+        // Holder objects to receive the data
+        RecordHolder rh = new RecordHolder();
+        KeyHolder kh = new KeyHolder();
+
+        // Part IDs found so far
+        int[] partIds = new int[16];
+        int found = 0;
+
+        try {
+            // Start a browse at the first entry for the supplier
+            KeyedFileBrowse kfb = this.ksds.startGenericBrowse(key, StockPartKey.LENGTH, SearchType.EQUAL);
+
+            try {
+                while ( true ) {
+
+                    // Read an entry from the index
+                    kfb.next(rh, kh);
+                    byte[] entry = rh.getValue();
+
+                    // Stop as soon as we reach the next supplier
+                    if ( Arrays.mismatch(entry, 0, StockPartKey.LENGTH, key, 0, StockPartKey.LENGTH) >= 0 ) {
+                        break;
+                    }
+
+                    // Grow the array as required
+                    if ( found == partIds.length ) {
+                        partIds = Arrays.copyOf(partIds, found * 2);
+                    }
+                    partIds[found++] = StockPartKey.decode(entry, StockPartKey.LENGTH);
+                }
+            }
+            catch (EndOfFileException eof) {
+                // Normal termination of loop - no further entries
+            }
+            finally {
+                kfb.end();
+            }
+        }
+        catch (RecordNotFoundException rnfe) {
+            // No entries for this supplier
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.ksds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+
+        return Arrays.copyOf(partIds, found);
+    }
+
+    /**
+     * Adds an entry to the index for every record in the stock part file,
+     * committing after every {@link KsdsExampleCommon#DEFAULT_BATCH_SIZE}
+     * records. This populates the index for a file which was loaded before
+     * the index existed. Entries which already exist are left unchanged.
+     *
+     * @return the number of records indexed.
+     */
+    public int build()
+    {
+        // Browse the stock part file without maintaining the index
+        KsdsExampleCommon ex = new KsdsExampleCommon();
+
+        // Supplier and part ID of each record in the current batch
+        int batchSize = KsdsExampleCommon.DEFAULT_BATCH_SIZE;
+        int[] suppliers = new int[batchSize];
+        int[] partIds = new int[batchSize];
+        int[] found = new int[1];
+
+        int indexed = 0;
+        int partIdNext = 0;
+
+        while ( true ) {
+
+            // Read the next batch, ending the browse before updating the index
+            found[0] = 0;
+            ex.browse(partIdNext, batchSize, view -> {
+                suppliers[found[0]] = view.getSupplier();
+                partIds[found[0]++] = view.getPartId();
+            });
+
+            // Index the batch and commit
+            for ( int i = 0; i < found[0]; i++ ) {
+                add(suppliers[i], partIds[i]);
+            }
+            ex.commitUnitOfWork();
+            indexed += found[0];
+
+            // Stop once a batch comes back short, or the key space is exhausted
+            if ( found[0] < batchSize || partIds[batchSize - 1] == StockPartKey.MAX_PART_ID ) {
+                break;
+            }
+            partIdNext = partIds[batchSize - 1] + 1;
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Builds the key of an index entry.
+     *
+     * @param supplier the supplier of the part.
+     * @param partId the part ID.
+     *
+     * @return a 16-byte key.
+     */
+    private static byte[] toKey(int supplier, int partId)
+    {
+        byte[] key = new byte[KEY_LENGTH];
+        StockPartKey.encode(supplier, key, 0);
+        StockPartKey.encode(partId, key, StockPartKey.LENGTH);
+        return key;
+    }
+}
@@ -10,8 +10,12 @@
 
 package com.ibm.cicsdev.vsam.rrds;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 
 import com.ibm.cics.server.CicsConditionException;
 import com.ibm.cics.server.DuplicateRecordException;
@@ -23,6 +27,9 @@ import com.ibm.cics.server.RecordHolder;
 import com.ibm.cics.server.RecordNotFoundException;
 import com.ibm.cics.server.Task;
 import com.ibm.cicsdev.bean.StockPart;
+import com.ibm.cicsdev.vsam.StockPartSnapshot;
+import com.ibm.cicsdev.vsam.StockPartSnapshotWriter;
+import com.ibm.cicsdev.vsam.StockPartView;
 import com.ibm.cicsdev.vsam.VsamExampleCommon;
 
 /**
@@ -39,20 +46,62 @@ public class RrdsExampleCommon extends VsamExampleCommon
      */
     private static final String FILE_NAME = "XMPLRRDS";
 
+    /**
+     * Number of records deleted between each syncpoint when truncating
+     * the file.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
     /**
      * A field to hold a reference to the VSAM RRDS file this
      * instance will access. 
      */
     private final RRDS rrds;
     
+    /**
+     * An optional bitmap of occupied slots, maintained as records are
+     * added and deleted, or <code>null</code> if there is none.
+     */
+    private final RrdsSlotAllocator slotAllocator;
+    
     /**
      * Constructor to initialise the reference to the sample file.
      */    
     public RrdsExampleCommon()
+    {
+        this(null);
+    }
+    
+    /**
+     * Constructor to initialise the reference to the sample file, and to
+     * maintain the supplied slot allocator as records are added and deleted.
+     * 
+     * The allocator should be held in a static field so that it is shared
+     * by every task in the JVM server.
+     * 
+     * @param slotAllocator the allocator to maintain and to use for
+     * {@link #addRecord(StockPart)}, or <code>null</code>.
+     */
+    public RrdsExampleCommon(RrdsSlotAllocator slotAllocator)
+    {
+        this(FILE_NAME, slotAllocator);
+    }
+    
+    /**
+     * Constructor to initialise the reference to another RRDS file with
+     * the same record layout as the sample file.
+     * 
+     * @param fileName the name of the file resource to use.
+     * @param slotAllocator the allocator to maintain, or <code>null</code>.
+     */
+    RrdsExampleCommon(String fileName, RrdsSlotAllocator slotAllocator)
     {
         // Create a new RRDS instance and initialise
         this.rrds = new RRDS();
-        this.rrds.setName(FILE_NAME);        
+        this.rrds.setName(fileName);
+        
+        // Save the optional allocator
+        this.slotAllocator = slotAllocator;
     }
     
     /**
@@ -69,6 +118,11 @@ public class RrdsExampleCommon extends VsamExampleCommon
         try {
             // Write the record into the file at the specified RRN
             this.rrds.write(rrn, record);
+            
+            // Mark the slot as taken
+            if ( this.slotAllocator != null && rrn <= this.slotAllocator.getCapacity() ) {
+                this.slotAllocator.markOccupied(rrn);
+            }
         }
         catch (DuplicateRecordException dre) {
             
@@ -96,6 +150,73 @@ public class RrdsExampleCommon extends VsamExampleCommon
         }
     }
 
+    /**
+     * Adds a record to the VSAM RRDS file in a free slot chosen by the slot
+     * allocator, so the caller does not need to choose an RRN.
+     * 
+     * If the chosen slot turns out to be occupied, for example by a record
+     * written outside this JVM server, it stays marked as occupied and
+     * another slot is chosen.
+     * 
+     * @param sp the {@link StockPart} instance to write to the file.
+     * 
+     * @return the RRN at which the record was written.
+     * 
+     * @throws IllegalStateException if no slot allocator is in use,
+     * or every slot is occupied.
+     */
+    public long addRecord(StockPart sp)
+    {
+        if ( this.slotAllocator == null ) {
+            throw new IllegalStateException("No slot allocator is in use");
+        }
+        
+        // Get the flat byte structure from the JZOS object
+        byte[] record = sp.getByteBuffer();
+        
+        while ( true ) {
+            
+            // Claim the next free slot
+            long rrn = this.slotAllocator.allocate();
+            if ( rrn == RrdsSlotAllocator.NO_SLOT ) {
+                throw new IllegalStateException("No free slots in file " + this.rrds.getName());
+            }
+            
+            try {
+                // Write the record into the chosen slot
+                this.rrds.write(rrn, record);
+                return rrn;
+            }
+            catch (DuplicateRecordException dre) {
+                // Slot was already in use - leave it marked and try the next one
+            }
+            catch (InvalidRequestException ire) {
+                
+                // The slot was not used after all
+                this.slotAllocator.release(rrn);
+                
+                // Invalid request may occur for several reasons - find out the root cause
+                // See the CICS API documentation for WRITE to see the full list
+                if ( ire.getRESP2() == 20 ) {
+                    // File not addable
+                    String strMsg = "Add operations not permitted for file %s";
+                    Task.getTask().out.println( String.format(strMsg, this.rrds.getName()) );
+                }
+                
+                // Throw an exception to rollback the current UoW
+                throw new RuntimeException(ire);
+            }
+            catch (CicsConditionException cce) {
+                
+                // The slot was not used after all
+                this.slotAllocator.release(rrn);
+                
+                // Crude error handling - propagate an exception back to caller
+                throw new RuntimeException(cce);
+            }
+        }
+    }
+
     /**
      * Provides a simple example of updating a single record in a VSAM RRDS file.
      * 
@@ -261,6 +382,101 @@ public class RrdsExampleCommon extends VsamExampleCommon
         // Return the list
         return list;
     }
+
+    /**
+     * Provides an example of browsing a VSAM RRDS dataset without creating
+     * a new object for each record.
+     * 
+     * Each record is passed to the supplied consumer through the same
+     * {@link StockPartView} instance, which is rebound to the record just read.
+     * The consumer must therefore copy any values it needs to keep, for example
+     * by calling {@link StockPartView#copy()}.
+     * 
+     * @param rrnStart the RRN from which the browse should begin.
+     * @param count the maximum number of records to pass to the consumer.
+     * @param consumer the callback to receive each record.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    public int browse(long rrnStart, int count, Consumer<? super StockPartView> consumer)
+    {
+        return browse( rrnStart, count, (view, rrn) -> consumer.accept(view) );
+    }
+
+    /**
+     * Provides an example of browsing a VSAM RRDS dataset without creating
+     * a new object for each record, passing the RRN of each record to the
+     * consumer along with the record itself.
+     * 
+     * As for {@link #browse(long, int, Consumer)}, the same
+     * {@link StockPartView} instance is reused for every record. Empty
+     * slots are skipped by the browse.
+     * 
+     * @param rrnStart the RRN from which the browse should begin.
+     * @param count the maximum number of records to pass to the consumer.
+     * @param consumer the callback to receive each record and its RRN.
+     * 
+     * @return the number of records passed to the consumer.
+     */
+    public int browse(long rrnStart, int count, ObjLongConsumer<? super StockPartView> consumer)
+    {
+        // Holder object to receive the data
+        RecordHolder rh = new RecordHolder();
+        
+        // The single view reused for every record
+        StockPartView view = new StockPartView();
+        
+        // Number of records processed
+        int processed = 0;
+        
+        try {            
+            // Start the browse of the file
+            RRDS_Browse rrdsBrowse = this.rrds.startBrowse(rrnStart);
+            
+            try {
+                // Loop until we reach maximum count
+                while ( processed < count ) {
+                    
+                    // Read a record from the file
+                    long rrn = rrdsBrowse.next(rh);
+                    
+                    // Rebind the view and pass to the consumer
+                    consumer.accept( view.bind(rh.getValue()), rrn );
+                    processed++;
+                }
+            }
+            catch (EndOfFileException eof) {
+                // Normal termination of loop - no further records
+            }
+            finally {
+                // Always end the browse, even if the consumer failed
+                rrdsBrowse.end();
+            }
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Initial browse failed - no records matching the supplied RRN
+        }
+        catch (InvalidRequestException ire) {
+            
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for STARTBR to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable or updateable
+                String strMsg = "Browse operations not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.rrds.getName()) );
+            }
+            
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+        
+        // Return the number of records processed
+        return processed;
+    }
     
     /**
      * Provides a simple example of deleting a single record from a VSAM RRDS file.
@@ -321,6 +537,7 @@ public class RrdsExampleCommon extends VsamExampleCommon
         try {            
             // Delete the selected record
             this.rrds.delete();
+            slotFreed(rrn);
             
             // Return the record as it stood before deletion
             return sp;
@@ -345,44 +562,160 @@ public class RrdsExampleCommon extends VsamExampleCommon
     }
 
     /**
-     * Loops through all the records in the file, deleting them as we go.
-     * Not expected to be very useful in a real-world scenario, but makes
-     * coding an RRDS example much easier, as the file will be in a known
-     * state before we begin the real update logic. 
+     * Deletes every record in the file. Not expected to be very useful in a
+     * real-world scenario, but makes coding an RRDS example much easier, as
+     * the file will be in a known state before we begin the real update logic.
+     * 
+     * @see #truncate(int)
      */
     public void emptyFile()
     {
-        // Holder object to receive the data
-        RecordHolder rh = new RecordHolder();
+        truncate(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Provides an example of deleting every record in a VSAM RRDS file
+     * without holding every record lock in a single unit of work.
+     * 
+     * The file is processed in batches. For each batch, a browse finds the
+     * RRNs of up to <code>batchSize</code> records, skipping any empty slots,
+     * so records beyond a gap are found as well. Each record is then deleted
+     * by RRN, and the unit of work is committed before the next batch starts
+     * from the slot after the last one found. The overall deletion rate is
+     * written to the task output.
+     * 
+     * @param batchSize the number of records to delete between each syncpoint.
+     * 
+     * @return the number of records deleted.
+     */
+    public long truncate(int batchSize)
+    {
+        // Validate the batch size
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
         
-        try {
-            // Read each record, deleting as we go
-            for ( long rrn = 1; rrn < Integer.MAX_VALUE; rrn++ ) {
-                
-                // Lock this record and delete
-                this.rrds.readForUpdate(rrn, rh);
-                this.rrds.delete();
+        // RRNs found by the browse for the current batch
+        long[] rrns = new long[batchSize];
+        int[] found = new int[1];
+        
+        long deleted = 0;
+        long start = System.nanoTime();
+        long rrnNext = 1;
+        
+        while ( true ) {
+            
+            // Collect the RRNs for the next batch, ending the browse before deleting
+            found[0] = 0;
+            browse(rrnNext, batchSize, (view, rrn) -> rrns[found[0]++] = rrn);
+            
+            // Delete each record and commit the batch
+            for ( int i = 0; i < found[0]; i++ ) {
+                if ( deleteSlot(rrns[i]) ) {
+                    deleted++;
+                }
+            }
+            commitUnitOfWork();
+            
+            // Stop once a batch comes back short
+            if ( found[0] < batchSize ) {
+                break;
             }
+            rrnNext = rrns[batchSize - 1] + 1;
+        }
+        
+        // Report the deletion rate
+        long elapsed = System.nanoTime() - start;
+        double rate = elapsed > 0 ? deleted * 1_000_000_000.0d / elapsed : 0.0d;
+        String strMsg = "Deleted %d records in %d ms (%.0f records/sec)";
+        Task.getTask().out.println( String.format(strMsg, deleted, elapsed / 1_000_000, rate) );
+        
+        return deleted;
+    }
+
+    /**
+     * Deletes the record in a single slot, without reading it first.
+     * 
+     * @param rrn the RRN of the record to delete.
+     * 
+     * @return true if the record was deleted, or false if the slot was
+     * already empty.
+     */
+    private boolean deleteSlot(long rrn)
+    {
+        try {
+            // Delete the record at the specified RRN
+            this.rrds.delete(rrn);
+            slotFreed(rrn);
+            return true;
         }
         catch (RecordNotFoundException rnfe) {
-            // Normal exit from loop - record ID not found
+            // Deleted by another task since the browse - nothing to do
+            return false;
         }
         catch (InvalidRequestException ire) {
             
             // Invalid request may occur for several reasons - find out the root cause
-            // See the CICS API documentation for READ UPDATE to see the full list
+            // See the CICS API documentation for DELETE to see the full list
             if ( ire.getRESP2() == 20 ) {
-                // File not readable or updateable
-                String strMsg = "Read, update, or delete operations not permitted for file %s";
+                // File not deletable
+                String strMsg = "Delete operations not permitted for file %s";
                 Task.getTask().out.println( String.format(strMsg, this.rrds.getName()) );
             }
             
             // Throw an exception to rollback the current UoW
             throw new RuntimeException(ire);
-        }        
+        }
         catch (CicsConditionException cce) {
-            // Crude error handling - propagate an exception back to caller
+            // Some other CICS failure
             throw new RuntimeException(cce);
         }
     }
+
+    /**
+     * Marks a slot as free in the slot allocator, if there is one.
+     * 
+     * @param rrn the RRN of the record that has been deleted.
+     */
+    private void slotFreed(long rrn)
+    {
+        if ( this.slotAllocator != null && rrn <= this.slotAllocator.getCapacity() ) {
+            this.slotAllocator.release(rrn);
+        }
+    }
+
+    /**
+     * Writes a columnar snapshot of every record in the RRDS file to a local
+     * file, using a single browse. The snapshot can then be read repeatedly
+     * using {@link StockPartSnapshot} without any further VSAM I/O.
+     * 
+     * @param path the local file to write, which is replaced if it exists.
+     * 
+     * @return the number of records written to the snapshot.
+     * 
+     * @throws IOException if the snapshot could not be written.
+     */
+    public int exportSnapshot(Path path) throws IOException
+    {
+        StockPartSnapshotWriter writer = new StockPartSnapshotWriter(path);
+        
+        // Read every record once, appending each field to its column
+        try {
+            browse(1, Integer.MAX_VALUE, writer);
+        }
+        catch (RuntimeException re) {
+            // Delete the partial columns before propagating the failure
+            writer.discard();
+            throw re;
+        }
+        
+        // Only write the file once the whole browse has succeeded
+        writer.close();
+        int rows = writer.getRowCount();
+        
+        // Report the size of the snapshot
+        String strMsg = "Wrote snapshot of %d records from file %s to %s";
+        Task.getTask().out.println( String.format(strMsg, rows, this.rrds.getName(), path) );
+        return rows;
+    }
 }
@@ -0,0 +1,477 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.rrds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ibm.cics.server.CicsConditionException;
+import com.ibm.cics.server.InvalidRequestException;
+import com.ibm.cics.server.NameResource;
+import com.ibm.cics.server.RRDS;
+import com.ibm.cics.server.RecordHolder;
+import com.ibm.cics.server.RecordNotFoundException;
+import com.ibm.cics.server.Task;
+import com.ibm.cicsdev.bean.StockPart;
+import com.ibm.cicsdev.vsam.StockPartView;
+
+/**
+ * Example of using a VSAM RRDS file as a hash table of stock part records,
+ * keyed by part ID.
+ *
+ * The table has a fixed number of slots, which are RRNs 1 to <i>n</i> of the
+ * file. Each part ID is hashed to a home slot, and collisions are resolved by
+ * linear probing: a lookup reads the home slot and each following slot in
+ * turn, wrapping round at the end of the table, until it finds the record or
+ * an empty slot. While the table is lightly loaded, most lookups therefore
+ * take a single READ.
+ *
+ * A deleted record is replaced by a tombstone, a record whose part ID field
+ * is all X'FF', rather than being deleted from the file. This keeps the
+ * probe sequence of every other record intact. Tombstones are reused by later
+ * inserts, and are discarded when the table is copied by
+ * {@link #rehash(String, long)}, which is intended to be run while the
+ * table is not otherwise in use.
+ *
+ * Inserts and deletes are serialised by a CICS enqueue on a resource named
+ * after the file, which is held until the end of the unit of work. A record
+ * inserted by one task is therefore never backed out while another task is
+ * inserting a record whose probe sequence passes through it. Lookups take no
+ * lock. The file should contain nothing but the table.
+ */
+public class RrdsHashTable
+{
+    /**
+     * Name of the file resource used by default.
+     */
+    public static final String DEFAULT_FILE_NAME = "XMPLRRDS";
+
+    /**
+     * Prefix of the name of the resource used to serialise updates.
+     */
+    private static final String RESOURCE_LOCK_PREFIX = "RRDSHASH.";
+
+    /**
+     * The record written in place of a deleted record.
+     */
+    private static final byte[] TOMBSTONE = new byte[StockPart.STOCK_PART_len];
+
+    static {
+        Arrays.fill(TOMBSTONE, 0, StockPartView.SUPPLIER_OFFSET, (byte) 0xFF);
+    }
+
+    /**
+     * A field to hold a reference to the VSAM RRDS file holding the table.
+     */
+    private final RRDS rrds;
+
+    /**
+     * Number of slots in the table.
+     */
+    private final long slots;
+
+    /**
+     * Serialises inserts and deletes.
+     */
+    private final NameResource lock;
+
+    /**
+     * Creates a table in the default file.
+     *
+     * @param slots the number of slots in the table.
+     */
+    public RrdsHashTable(long slots)
+    {
+        this(DEFAULT_FILE_NAME, slots);
+    }
+
+    /**
+     * Creates a table in the specified file. Every instance for the same
+     * file must use the same number of slots.
+     *
+     * @param fileName the name of the RRDS file resource holding the table.
+     * @param slots the number of slots in the table.
+     */
+    public RrdsHashTable(String fileName, long slots)
+    {
+        if ( slots < 1 ) {
+            throw new IllegalArgumentException("Slot count must be at least 1");
+        }
+
+        // Create a new RRDS instance and initialise
+        this.rrds = new RRDS();
+        this.rrds.setName(fileName);
+        this.slots = slots;
+
+        // Create a named synchronization resource
+        this.lock = new NameResource();
+        this.lock.setName(RESOURCE_LOCK_PREFIX + fileName);
+    }
+
+    /**
+     * Finds the record for a part.
+     *
+     * @param partId the part ID to find.
+     *
+     * @return a {@link StockPart} instance representing the record, or
+     * <code>null</code> if the part is not in the table.
+     */
+    public StockPart get(int partId)
+    {
+        RecordHolder rh = new RecordHolder();
+        long rrn = home(partId);
+
+        for ( long probes = 0; probes < this.slots; probes++ ) {
+
+            // An empty slot ends the probe sequence
+            byte[] record = readSlot(rrn, rh);
+            if ( record == null ) {
+                return null;
+            }
+
+            // Skip tombstones and other parts
+            if ( !isTombstone(record) && StockPartView.partIdOf(record) == partId ) {
+                return new StockPart(record);
+            }
+
+            rrn = next(rrn);
+        }
+
+        // Every slot has been examined
+        return null;
+    }
+
+    /**
+     * Adds a record to the table, replacing any existing record for the
+     * same part. The unit of work is not committed.
+     *
+     * @param sp the {@link StockPart} instance to store.
+     *
+     * @return the RRN at which the record was stored.
+     *
+     * @throws IllegalStateException if the table is full.
+     */
+    public long put(StockPart sp)
+    {
+        int partId = sp.getPartId();
+        byte[] record = sp.getByteBuffer();
+
+        enqueue();
+
+        RecordHolder rh = new RecordHolder();
+        long rrn = home(partId);
+
+        // The first tombstone passed, which can be reused if the part is new
+        long reuse = -1;
+
+        for ( long probes = 0; probes < this.slots; probes++ ) {
+
+            byte[] existing = readSlot(rrn, rh);
+
+            if ( existing == null ) {
+
+                // End of the probe sequence - the part is not in the table
+                if ( reuse < 0 ) {
+                    writeSlot(rrn, record);
+                    return rrn;
+                }
+                break;
+            }
+
+            if ( isTombstone(existing) ) {
+                // Remember the first tombstone, but keep looking for the part
+                if ( reuse < 0 ) {
+                    reuse = rrn;
+                }
+            }
+            else if ( StockPartView.partIdOf(existing) == partId ) {
+                // Already present - replace the record
+                rewriteSlot(rrn, record);
+                return rrn;
+            }
+
+            rrn = next(rrn);
+        }
+
+        // The part is new, so replace the first tombstone found
+        if ( reuse < 0 ) {
+            String strMsg = "Hash table in file %s is full (%d slots)";
+            throw new IllegalStateException( String.format(strMsg, this.rrds.getName(), this.slots) );
+        }
+        rewriteSlot(reuse, record);
+        return reuse;
+    }
+
+    /**
+     * Removes the record for a part from the table, leaving a tombstone
+     * in its slot. The unit of work is not committed.
+     *
+     * @param partId the part ID to remove.
+     *
+     * @return true if the part was removed, or false if it was not in
+     * the table.
+     */
+    public boolean remove(int partId)
+    {
+        enqueue();
+
+        RecordHolder rh = new RecordHolder();
+        long rrn = home(partId);
+
+        for ( long probes = 0; probes < this.slots; probes++ ) {
+
+            // An empty slot ends the probe sequence
+            byte[] record = readSlot(rrn, rh);
+            if ( record == null ) {
+                return false;
+            }
+
+            // Replace the record with a tombstone
+            if ( !isTombstone(record) && StockPartView.partIdOf(record) == partId ) {
+                rewriteSlot(rrn, TOMBSTONE);
+                return true;
+            }
+
+            rrn = next(rrn);
+        }
+
+        return false;
+    }
+
+    /**
+     * Writes the load factor and probe lengths of the table to the task
+     * output, using a single browse of the file.
+     *
+     * The mean probe length is the average number of READs taken by a
+     * lookup of a part which is in the table.
+     *
+     * @return the proportion of slots holding a record, excluding tombstones.
+     */
+    public double report()
+    {
+        long[] counts = new long[4];    // live, tombstones, total probes, max probes
+
+        new RrdsExampleCommon(this.rrds.getName(), null).browse(1, Integer.MAX_VALUE, (view, rrn) -> {
+
+            // Ignore anything beyond the end of the table
+            if ( rrn > this.slots ) {
+                return;
+            }
+
+            byte[] record = view.getByteBuffer();
+            if ( isTombstone(record) ) {
+                counts[1]++;
+                return;
+            }
+
+            // Distance from the home slot, wrapping round the end of the table
+            long probes = Math.floorMod(rrn - home(view.getPartId()), this.slots) + 1;
+            counts[0]++;
+            counts[2] += probes;
+            counts[3] = Math.max(counts[3], probes);
+        });
+
+        double load = (double) counts[0] / this.slots;
+        double used = (double) (counts[0] + counts[1]) / this.slots;
+        double mean = counts[0] == 0 ? 0.0d : (double) counts[2] / counts[0];
+
+        String strMsg = "Hash table in file %s: %d slots, %d records, %d tombstones, "
+                + "load factor %.2f (%.2f including tombstones), mean probes %.2f, max probes %d";
+        Task.getTask().out.println( String.format(strMsg, this.rrds.getName(), this.slots, counts[0], counts[1],
+                load, used, mean, counts[3]) );
+
+        return load;
+    }
+
+    /**
+     * Copies every record in the table into a new table in another RRDS
+     * file, discarding tombstones, and committing after every
+     * {@link RrdsExampleCommon#DEFAULT_BATCH_SIZE} records.
+     *
+     * This is intended to be run offline, when the table is becoming full.
+     * The target file should be empty, and the source table should not be
+     * updated while the copy is running.
+     *
+     * @param targetFileName the name of the RRDS file resource to copy to.
+     * @param targetSlots the number of slots in the new table, which must
+     * be larger than this table.
+     *
+     * @return the new table.
+     */
+    public RrdsHashTable rehash(String targetFileName, long targetSlots)
+    {
+        if ( targetSlots <= this.slots ) {
+            throw new IllegalArgumentException("New table must have more than " + this.slots + " slots");
+        }
+
+        RrdsHashTable target = new RrdsHashTable(targetFileName, targetSlots);
+        RrdsExampleCommon source = new RrdsExampleCommon(this.rrds.getName(), null);
+
+        // Records found by the browse for the current batch
+        int batchSize = RrdsExampleCommon.DEFAULT_BATCH_SIZE;
+        List<StockPart> batch = new ArrayList<>(batchSize);
+        long[] rrnLast = new long[1];
+
+        long copied = 0;
+        long start = System.nanoTime();
+        long rrnNext = 1;
+
+        while ( rrnNext <= this.slots ) {
+
+            // Collect the next batch, ending the browse before writing
+            batch.clear();
+            int found = source.browse(rrnNext, batchSize, (view, rrn) -> {
+                if ( rrn <= this.slots && !isTombstone(view.getByteBuffer()) ) {
+                    batch.add( view.copy() );
+                }
+                rrnLast[0] = rrn;
+            });
+
+            // Insert each record into the new table and commit the batch
+            for ( StockPart sp : batch ) {
+                target.put(sp);
+            }
+            source.commitUnitOfWork();
+            copied += batch.size();
+
+            // Stop once a batch comes back short
+            if ( found < batchSize ) {
+                break;
+            }
+            rrnNext = rrnLast[0] + 1;
+        }
+
+        // Report the copy rate
+        long elapsed = System.nanoTime() - start;
+        double rate = elapsed > 0 ? copied * 1_000_000_000.0d / elapsed : 0.0d;
+        String strMsg = "Rehashed %d records from file %s into %d slots in file %s in %d ms (%.0f records/sec)";
+        Task.getTask().out.println( String.format(strMsg, copied, this.rrds.getName(), targetSlots,
+                targetFileName, elapsed / 1_000_000, rate) );
+
+        return target;
+    }
+
+    /**
+     * @return the number of slots in the table.
+     */
+    public long getSlotCount()
+    {
+        return this.slots;
+    }
+
+    /**
+     * Finds the home slot of a part.
+     */
+    private long home(int partId)
+    {
+        // Spread the bits, since part IDs are often sequential
+        int h = partId * 0x9E3779B9;
+        h ^= h >>> 16;
+        return Math.floorMod((long) h, this.slots) + 1;
+    }
+
+    /**
+     * Finds the slot after the supplied one, wrapping round at the end.
+     */
+    private long next(long rrn)
+    {
+        return rrn == this.slots ? 1 : rrn + 1;
+    }
+
+    /**
+     * Tests whether a record is a tombstone.
+     */
+    private static boolean isTombstone(byte[] record)
+    {
+        return Arrays.equals(record, 0, StockPartView.SUPPLIER_OFFSET, TOMBSTONE, 0, StockPartView.SUPPLIER_OFFSET);
+    }
+
+    /**
+     * Takes the lock serialising updates to the table, which is held
+     * until the end of the unit of work.
+     */
+    private void enqueue()
+    {
+        try {
+            this.lock.enqueue();
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Reads a single slot.
+     *
+     * @return the record, or <code>null</code> if the slot is empty.
+     */
+    private byte[] readSlot(long rrn, RecordHolder rh)
+    {
+        try {
+            this.rrds.read(rrn, rh);
+            return rh.getValue();
+        }
+        catch (RecordNotFoundException rnfe) {
+            // Empty slot
+            return null;
+        }
+        catch (InvalidRequestException ire) {
+
+            // Invalid request may occur for several reasons - find out the root cause
+            // See the CICS API documentation for READ to see the full list
+            if ( ire.getRESP2() == 20 ) {
+                // File not readable
+                String strMsg = "Read operation not permitted for file %s";
+                Task.getTask().out.println( String.format(strMsg, this.rrds.getName()) );
+            }
+
+            // Throw an exception to rollback the current UoW
+            throw new RuntimeException(ire);
+        }
+        catch (CicsConditionException cce) {
+            // Some other CICS failure
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Writes a record into an empty slot.
+     */
+    private void writeSlot(long rrn, byte[] record)
+    {
+        try {
+            this.rrds.write(rrn, record);
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+    }
+
+    /**
+     * Replaces the record in an occupied slot.
+     */
+    private void rewriteSlot(long rrn, byte[] record)
+    {
+        try {
+            // Lock the slot, then replace its contents
+            RecordHolder rh = new RecordHolder();
+            this.rrds.readForUpdate(rrn, rh);
+            this.rrds.rewrite(record);
+        }
+        catch (CicsConditionException cce) {
+            // Crude error handling - propagate an exception back to caller
+            throw new RuntimeException(cce);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2017 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.vsam.rrds;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Chooses free slots for new records in the VSAM RRDS file, using a bitmap of
+ * the slots which are occupied.
+ *
+ * Slot <code>n</code> is represented by bit <code>(n - 1) % 64</code> of word
+ * <code>(n - 1) / 64</code>, so the bitmap takes one bit per slot. A free
+ * slot is found a word at a time, by skipping words with every bit set and
+ * then locating the lowest clear bit with a single instruction. The index of
+ * the lowest word which may contain a free slot is remembered, so that full
+ * words at the start of the file are not scanned again, and allocation takes
+ * constant time on average. Each slot is claimed by an atomic
+ * compare-and-set of its word, so concurrent tasks never choose the same slot.
+ *
+ * The bitmap is populated from the file with {@link #load()}, and is kept up
+ * to date by {@link RrdsExampleCommon} when an instance is passed to its
+ * constructor. It is not part of the CICS unit of work, so a slot claimed by
+ * a write which is later backed out remains marked as occupied until the
+ * bitmap is next loaded. Likewise a slot written outside this JVM server may
+ * be marked as free, in which case the write fails with a duplicate record
+ * and {@link RrdsExampleCommon#addRecord(com.ibm.cicsdev.bean.StockPart)}
+ * simply claims another slot.
+ *
+ * An instance is intended to be held in a static field, and all methods
+ * are safe to call from concurrent tasks.
+ */
+public class RrdsSlotAllocator
+{
+    /**
+     * Returned when every slot is occupied.
+     */
+    public static final long NO_SLOT = -1;
+
+    /**
+     * The bitmap, one bit per slot.
+     */
+    private final AtomicLongArray words;
+
+    /**
+     * Number of slots covered by the bitmap.
+     */
+    private final long capacity;
+
+    /**
+     * Index of the lowest word which may contain a free slot.
+     */
+    private final AtomicInteger hint = new AtomicInteger();
+
+    /**
+     * Creates an allocator with every slot free.
+     *
+     * @param capacity the number of slots in the file, which is the highest
+     * RRN that will be allocated.
+     */
+    public RrdsSlotAllocator(long capacity)
+    {
+        if ( capacity < 1 || capacity > 64L * Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException("Invalid slot count: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.words = new AtomicLongArray( (int) ((capacity + 63) / 64) );
+
+        // Mark the bits beyond the last slot as occupied, so they are never chosen
+        int spare = (int) (this.words.length() * 64L - capacity);
+        if ( spare > 0 ) {
+            this.words.set( this.words.length() - 1, -1L << (64 - spare) );
+        }
+    }
+
+    /**
+     * Marks every slot holding a record as occupied, using a single browse
+     * of the file. Slots are not marked free, so this should be called
+     * before the allocator is used.
+     *
+     * @return the number of occupied slots found.
+     */
+    public int load()
+    {
+        int[] found = new int[1];
+
+        // Browse every record in the file, noting its RRN
+        new RrdsExampleCommon().browse(1, Integer.MAX_VALUE, (view, rrn) -> {
+            if ( rrn <= this.capacity ) {
+                markOccupied(rrn);
+                found[0]++;
+            }
+        });
+
+        return found[0];
+    }
+
+    /**
+     * Claims the lowest free slot.
+     *
+     * @return the RRN of the slot claimed, or {@link #NO_SLOT} if every
+     * slot is occupied.
+     */
+    public long allocate()
+    {
+        int start = this.hint.get();
+
+        // Search from the hint to the end, then wrap round once to catch
+        // any slot freed below the hint by a concurrent release
+        long rrn = allocate(start, this.words.length());
+        if ( rrn == NO_SLOT && start > 0 ) {
+            rrn = allocate(0, start);
+        }
+        return rrn;
+    }
+
+    /**
+     * Marks a slot as occupied, for a record written at a known RRN.
+     *
+     * @param rrn the RRN of the slot.
+     */
+    public void markOccupied(long rrn)
+    {
+        int w = wordOf(rrn);
+        long bit = bitOf(rrn);
+        this.words.getAndUpdate(w, word -> word | bit);
+    }
+
+    /**
+     * Marks a slot as free, for a record which has been deleted.
+     *
+     * @param rrn the RRN of the slot.
+     */
+    public void release(long rrn)
+    {
+        int w = wordOf(rrn);
+        long bit = bitOf(rrn);
+        this.words.getAndUpdate(w, word -> word & ~bit);
+
+        // Make sure the next search can find this slot
+        this.hint.accumulateAndGet(w, Math::min);
+    }
+
+    /**
+     * @param rrn the RRN of a slot.
+     *
+     * @return true if the slot is marked as occupied.
+     */
+    public boolean isOccupied(long rrn)
+    {
+        return (this.words.get( wordOf(rrn) ) & bitOf(rrn)) != 0;
+    }
+
+    /**
+     * @return the number of slots marked as occupied.
+     */
+    public long getOccupiedCount()
+    {
+        long count = 0;
+        for ( int w = 0; w < this.words.length(); w++ ) {
+            count += Long.bitCount( this.words.get(w) );
+        }
+
+        // Exclude the bits beyond the last slot
+        return count - (this.words.length() * 64L - this.capacity);
+    }
+
+    /**
+     * @return the number of slots covered by the bitmap.
+     */
+    public long getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * Claims the lowest free slot in a range of words.
+     */
+    private long allocate(int from, int to)
+    {
+        for ( int w = from; w < to; w++ ) {
+
+            long word = this.words.get(w);
+            while ( word != -1L ) {
+
+                // Claim the lowest clear bit in this word
+                int bit = Long.numberOfTrailingZeros(~word);
+                if ( this.words.compareAndSet(w, word, word | (1L << bit)) ) {
+                    return 64L * w + bit + 1;
+                }
+
+                // Lost a race with another task - look at this word again
+                word = this.words.get(w);
+            }
+
+            // Word is full - start later searches beyond it
+            this.hint.compareAndSet(w, w + 1);
+        }
+
+        return NO_SLOT;
+    }
+
+    /**
+     * Finds the word holding the bit for a slot.
+     */
+    private int wordOf(long rrn)
+    {
+        if ( rrn < 1 || rrn > this.capacity ) {
+            throw new IllegalArgumentException("RRN out of range: " + rrn);
+        }
+        return (int) ((rrn - 1) / 64);
+    }
+
+    /**
+     * Builds the mask for the bit of a slot within its word.
+     */
+    private static long bitOf(long rrn)
+    {
+        return 1L << ((rrn - 1) % 64);
+    }
+}